@@ -4,6 +4,7 @@ plugins {
     `java-library`
     `maven-publish`
     id("com.github.johnrengelman.shadow") version "8.1.1"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 repositories {
@@ -29,12 +30,14 @@ dependencies {
     shadow(libs.bundles.asm)
     shadow(libs.guava)
     shadow(libs.gson)
+    jmh(libs.bundles.asm)
 }
 
 sourceSets {
     main {
         java {
             srcDir("src")
+            exclude("jmh/**")
         }
     }
 }
@@ -56,6 +59,35 @@ tasks {
         dependsOn(shadowJar)
     }
 
+    register<JavaExec>("startupBenchmark") {
+        group = "benchmark"
+        description = "Measures end-to-end startup against generated fixtures, see StartupBenchmark"
+
+        val launcher = shadowJar.flatMap { it.archiveFile }
+        val options = listOf("classes", "libraries", "mods", "mixins-per-mod", "runs", "max-cold-ms", "max-warm-ms")
+
+        inputs.file(launcher)
+        classpath = sourceSets["jmh"].runtimeClasspath
+        mainClass.set("com.floweytf.fabricpaperloader.bench.StartupBenchmark")
+        workingDir = layout.buildDirectory.get().asFile
+
+        // e.g. -PstartupBenchmark.max-warm-ms=2000 -PstartupBenchmark.jvmArgs="-Dfabric-paper-loader.classCache=true"
+        argumentProviders.add(CommandLineArgumentProvider {
+            val args = mutableListOf("--launcher-classpath", launcher.get().asFile.absolutePath)
+
+            options.forEach { option ->
+                providers.gradleProperty("startupBenchmark.$option").orNull?.let { args += listOf("--$option", it) }
+            }
+
+            providers.gradleProperty("startupBenchmark.jvmArgs").orNull
+                ?.split(" ")
+                ?.filter { it.isNotBlank() }
+                ?.forEach { args += listOf("--jvm-arg", it) }
+
+            args
+        })
+    }
+
     shadowJar {
         manifest {
             val excluded = setOf("Manifest-Version", "Main-Class")
@@ -87,6 +119,10 @@ java {
     withSourcesJar()
 }
 
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+}
+
 publishing {
     publications {
         create<MavenPublication>("maven") {
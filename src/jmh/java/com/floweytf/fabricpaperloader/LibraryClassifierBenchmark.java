@@ -0,0 +1,59 @@
+package com.floweytf.fabricpaperloader;
+
+import com.floweytf.fabricpaperloader.bench.SyntheticJars;
+import com.floweytf.fabricpaperloader.classpath.JarPool;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures classifying a single library, which is done for every classpath jar and paper library on boot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibraryClassifierBenchmark {
+    @Param({"100", "2000"})
+    public int classes;
+
+    private Path root;
+    private Path jar;
+    private Path directory;
+
+    @Setup
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("classifier-bench");
+        final var entries = SyntheticJars.generateClasses("net/example/lib", classes, 0);
+        jar = SyntheticJars.writeJar(root.resolve("library.jar"), entries);
+        directory = SyntheticJars.writeDirectory(root.resolve("library"), entries);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticJars.delete(root);
+    }
+
+    @Benchmark
+    public LibraryClassifier classifyJar() {
+        try (final var jarPool = new JarPool()) {
+            final var classifier = new LibraryClassifier(jarPool);
+            classifier.addPaths(jar);
+            return classifier;
+        }
+    }
+
+    @Benchmark
+    public LibraryClassifier classifyDirectory() {
+        try (final var jarPool = new JarPool()) {
+            final var classifier = new LibraryClassifier(jarPool);
+            classifier.addPaths(directory);
+            return classifier;
+        }
+    }
+}
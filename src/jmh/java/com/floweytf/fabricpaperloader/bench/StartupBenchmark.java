@@ -0,0 +1,262 @@
+package com.floweytf.fabricpaperloader.bench;
+
+import com.floweytf.fabricpaperloader.bench.stub.StubServerMain;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Measures the whole launch, from the loader's {@code Main.main} to paper's entrypoint, by starting the loader in a
+ * child JVM against the fixtures from {@link StartupFixtures}. Nothing is downloaded, so the results only depend on
+ * the loader and the machine, and the benchmark can gate regressions.
+ * <p>
+ * Each round does a cold run, without paperclip's output or any of the loader's caches, followed by a warm run that
+ * reuses what the cold run left behind. The OS page cache is warm in both cases. Each run reports the time to the
+ * entrypoint and to having loaded every server class (with the mods' mixins applied), the bytes allocated by live
+ * threads at the entrypoint, and the peak resident set size.
+ * <p>
+ * Usually run through the {@code startupBenchmark} gradle task, which builds the loader jar and passes it as the
+ * launcher classpath. Options:
+ * <ul>
+ *     <li>{@code --launcher-classpath <path>}: the classpath to launch the loader with. Required.</li>
+ *     <li>{@code --work <dir>}: where to generate the fixtures; wiped first.</li>
+ *     <li>{@code --classes <n>}, {@code --libraries <n>}, {@code --mods <n>}, {@code --mixins-per-mod <n>}: the size
+ *     of the fixtures, see {@link StartupFixtures.Options}.</li>
+ *     <li>{@code --runs <n>}: the number of measured rounds, after one discarded round.</li>
+ *     <li>{@code --jvm-arg <arg>}: an argument for the child JVM, such as a loader property. Repeatable.</li>
+ *     <li>{@code --max-cold-ms <ms>}, {@code --max-warm-ms <ms>}: fail if the median time to the entrypoint
+ *     exceeds this.</li>
+ * </ul>
+ */
+public final class StartupBenchmark {
+    private static final String LOADER_MAIN = "com.floweytf.fabricpaperloader.Main";
+    private static final int OUTPUT_TAIL = 40;
+    private static final long TIMEOUT_MINUTES = 5;
+
+    /**
+     * The measurements of a single launch.
+     *
+     * @param entrypointMillis The JVM uptime when paper's entrypoint was entered.
+     * @param loadedMillis     The JVM uptime once every server class was loaded.
+     * @param allocatedBytes   The bytes allocated by live threads when paper's entrypoint was entered.
+     * @param peakRssKib       The peak resident set size, or {@code -1} if unknown.
+     * @param wallMillis       The time from starting the child JVM to it exiting.
+     */
+    private record Sample(
+        long entrypointMillis,
+        long loadedMillis,
+        long allocatedBytes,
+        long peakRssKib,
+        long wallMillis
+    ) {
+    }
+
+    private StartupBenchmark() {
+    }
+
+    private static Map<String, List<String>> parseArguments(String[] args) {
+        final var options = new HashMap<String, List<String>>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --<option> <value>, got " + args[i]);
+            }
+
+            options.computeIfAbsent(args[i].substring(2), ignored -> new ArrayList<>()).add(args[++i]);
+        }
+
+        return options;
+    }
+
+    private static String option(Map<String, List<String>> options, String name, String fallback) {
+        final var values = options.getOrDefault(name, List.of());
+        return values.isEmpty() ? fallback : values.get(values.size() - 1);
+    }
+
+    private static int intOption(Map<String, List<String>> options, String name, int fallback) {
+        return Integer.parseInt(option(options, name, Integer.toString(fallback)));
+    }
+
+    /**
+     * Removes everything a launch produced, keeping only the fixtures.
+     */
+    private static void reset(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (final var file : files.toList()) {
+                final var name = file.getFileName().toString();
+
+                if (!name.equals("paperclip.jar") && !name.equals("mods")) {
+                    SyntheticJars.delete(file);
+                }
+            }
+        }
+    }
+
+    private static Sample launch(Path directory, String launcherClassPath, List<String> jvmArgs) throws Exception {
+        final var command = new ArrayList<String>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.addAll(List.of("-cp", launcherClassPath, LOADER_MAIN, "nogui"));
+
+        final var start = System.nanoTime();
+        final var process = new ProcessBuilder(command)
+            .directory(directory.toFile())
+            .redirectErrorStream(true)
+            .start();
+
+        final var reports = new HashMap<String, long[]>();
+        final var tail = new ArrayDeque<String>();
+
+        try (final var reader = new BufferedReader(
+            new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)
+        )) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(StubServerMain.MARKER)) {
+                    final var parts = line.split(" ");
+                    reports.put(parts[1], new long[]{
+                        Long.parseLong(parts[2]), Long.parseLong(parts[3]), Long.parseLong(parts[4])
+                    });
+                    continue;
+                }
+
+                tail.addLast(line);
+
+                if (tail.size() > OUTPUT_TAIL) {
+                    tail.removeFirst();
+                }
+            }
+        }
+
+        if (!process.waitFor(TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+            process.destroyForcibly();
+            throw new IllegalStateException("The loader did not exit within " + TIMEOUT_MINUTES + " minutes");
+        }
+
+        final var wall = (System.nanoTime() - start) / 1_000_000;
+        final var entrypoint = reports.get("entrypoint");
+        final var loaded = reports.get("loaded");
+
+        if (process.exitValue() != 0 || entrypoint == null || loaded == null) {
+            throw new IllegalStateException(
+                "The loader exited with code %d before reaching the entrypoint, last output:\n%s".formatted(
+                    process.exitValue(), String.join("\n", tail)
+                )
+            );
+        }
+
+        return new Sample(entrypoint[0], loaded[0], entrypoint[1], loaded[2], wall);
+    }
+
+    private static long median(List<Sample> samples, ToLongFunction<Sample> metric) {
+        final var values = samples.stream().mapToLong(metric).sorted().toArray();
+        return values[values.length / 2];
+    }
+
+    private static long min(List<Sample> samples, ToLongFunction<Sample> metric) {
+        return samples.stream().mapToLong(metric).min().orElseThrow();
+    }
+
+    private static void print(String name, List<Sample> samples) {
+        System.out.printf(
+            "%s: entrypoint %d ms (min %d), all classes loaded %d ms (min %d), allocated %.1f MiB, " +
+                "peak RSS %.1f MiB, wall %d ms%n",
+            name,
+            median(samples, Sample::entrypointMillis), min(samples, Sample::entrypointMillis),
+            median(samples, Sample::loadedMillis), min(samples, Sample::loadedMillis),
+            median(samples, Sample::allocatedBytes) / (1024.0 * 1024.0),
+            median(samples, Sample::peakRssKib) / 1024.0,
+            median(samples, Sample::wallMillis)
+        );
+    }
+
+    /**
+     * Checks a median time to the entrypoint against its limit, if one was given.
+     *
+     * @return Whether the limit holds.
+     */
+    private static boolean check(Map<String, List<String>> options, String limit, String name, List<Sample> samples) {
+        final var max = option(options, limit, null);
+
+        if (max == null) {
+            return true;
+        }
+
+        final var actual = median(samples, Sample::entrypointMillis);
+
+        if (actual > Long.parseLong(max)) {
+            System.out.printf("Regression: median %s time to entrypoint is %d ms, limit is %s ms%n", name, actual, max);
+            return false;
+        }
+
+        return true;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final var options = parseArguments(args);
+        final var launcherClassPath = option(options, "launcher-classpath", null);
+
+        if (launcherClassPath == null) {
+            throw new IllegalArgumentException("--launcher-classpath is required");
+        }
+
+        final var directory = Path.of(option(options, "work", "build/startup-benchmark")).toAbsolutePath();
+        final var fixtures = new StartupFixtures.Options(
+            intOption(options, "classes", 20000),
+            intOption(options, "libraries", 4),
+            intOption(options, "mods", 8),
+            intOption(options, "mixins-per-mod", 4)
+        );
+        final var runs = intOption(options, "runs", 5);
+        final var jvmArgs = options.getOrDefault("jvm-arg", List.of());
+
+        if (runs < 1) {
+            throw new IllegalArgumentException("--runs must be at least 1");
+        }
+
+        if (Files.exists(directory)) {
+            SyntheticJars.delete(directory);
+        }
+
+        StartupFixtures.generate(directory, fixtures);
+        System.out.printf("Generated %s in %s%n", fixtures, directory);
+
+        final var cold = new ArrayList<Sample>();
+        final var warm = new ArrayList<Sample>();
+
+        // the first round only warms up the page cache
+        for (int round = 0; round <= runs; round++) {
+            reset(directory);
+            final var coldSample = launch(directory, launcherClassPath, jvmArgs);
+            final var warmSample = launch(directory, launcherClassPath, jvmArgs);
+
+            if (round != 0) {
+                cold.add(coldSample);
+                warm.add(warmSample);
+                System.out.printf("Round %d/%d: %s, %s%n", round, runs, coldSample, warmSample);
+            }
+        }
+
+        print("cold", cold);
+        print("warm", warm);
+
+        final var passed = check(options, "max-cold-ms", "cold", cold) & check(options, "max-warm-ms", "warm", warm);
+
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.floweytf.fabricpaperloader.bench;
+
+import com.floweytf.fabricpaperloader.bench.stub.StubPaperclip;
+import com.floweytf.fabricpaperloader.bench.stub.StubServerMain;
+import com.floweytf.fabricpaperloader.util.Utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+
+/**
+ * Generates a server directory that the loader can launch without a real paper jar: a {@code paperclip.jar} holding
+ * a stub paperclip, a synthetic server jar and libraries, and a set of mods with mixins into the server jar.
+ */
+public final class StartupFixtures {
+    public static final String VERSION = "1.20.4";
+    public static final String GAME_PREFIX = "net/minecraft/benchmark";
+    private static final String SERVER_MAIN = "org/bukkit/craftbukkit/Main";
+    private static final int LIBRARY_CLASSES = 500;
+
+    /**
+     * What to generate.
+     *
+     * @param classes      The number of classes in the server jar.
+     * @param libraries    The number of libraries, each with a fixed number of classes.
+     * @param mods         The number of mods.
+     * @param mixinsPerMod The number of mixins in each mod, each targeting a different server class.
+     */
+    public record Options(int classes, int libraries, int mods, int mixinsPerMod) {
+    }
+
+    private StartupFixtures() {
+    }
+
+    /**
+     * Copies a compiled class under another name.
+     */
+    private static byte[] copyClass(Class<?> source, String internalName) throws IOException {
+        try (final var in = source.getResourceAsStream(source.getSimpleName() + ".class")) {
+            final var reader = new ClassReader(Objects.requireNonNull(in, source.getName()));
+            final var writer = new ClassWriter(0);
+            reader.accept(new ClassRemapper(writer, new SimpleRemapper(Type.getInternalName(source), internalName)), 0);
+            return writer.toByteArray();
+        }
+    }
+
+    /**
+     * Generates a mixin injecting at the head of {@code run} in a class from
+     * {@link SyntheticJars#generateClass(String, boolean, int)}.
+     */
+    private static byte[] generateMixin(String internalName, String target) {
+        final var writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, internalName, null, "java/lang/Object",
+            null);
+
+        final var mixin = writer.visitAnnotation("Lorg/spongepowered/asm/mixin/Mixin;", false);
+        final var targets = mixin.visitArray("value");
+        targets.visit(null, Type.getObjectType(target));
+        targets.visitEnd();
+        mixin.visitEnd();
+
+        final var handler = writer.visitMethod(
+            Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC,
+            "benchmark$onRun",
+            "(Lorg/spongepowered/asm/mixin/injection/callback/CallbackInfo;)V",
+            null,
+            null
+        );
+
+        final var inject = handler.visitAnnotation("Lorg/spongepowered/asm/mixin/injection/Inject;", true);
+        final var method = inject.visitArray("method");
+        method.visit(null, "run");
+        method.visitEnd();
+        final var at = inject.visitArray("at");
+        final var head = at.visitAnnotation(null, "Lorg/spongepowered/asm/mixin/injection/At;");
+        head.visit("value", "HEAD");
+        head.visitEnd();
+        at.visitEnd();
+        inject.visitEnd();
+
+        handler.visitCode();
+        handler.visitInsn(Opcodes.RETURN);
+        handler.visitMaxs(0, 0);
+        handler.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static String listEntry(byte[] contents, String id, String path) {
+        return Utils.sha256(contents) + "\t" + id + "\t" + path + "\n";
+    }
+
+    private static byte[] generateServerJar(Options options) throws IOException {
+        final var entries = new LinkedHashMap<>(SyntheticJars.generateClasses(GAME_PREFIX, options.classes(), 0));
+        final var classList = entries.keySet().stream()
+            .map(name -> name.substring(0, name.length() - ".class".length()).replace('/', '.'))
+            .collect(Collectors.joining("\n"));
+
+        entries.put(SERVER_MAIN + ".class", copyClass(StubServerMain.class, SERVER_MAIN));
+        entries.put(StubServerMain.CLASS_LIST, classList.getBytes(StandardCharsets.UTF_8));
+        return SyntheticJars.toJar(entries);
+    }
+
+    private static Path writePaperclip(Path directory, Options options) throws IOException {
+        final var entries = new LinkedHashMap<String, byte[]>();
+        // only looked up to recognize the jar as paperclip
+        entries.put(
+            "io/papermc/paperclip/Main.class",
+            SyntheticJars.generateClass("io/papermc/paperclip/Main", false, 0)
+        );
+        entries.put("io/papermc/paperclip/Paperclip.class",
+            copyClass(StubPaperclip.class, "io/papermc/paperclip/Paperclip"));
+
+        final var serverJar = generateServerJar(options);
+        final var serverPath = "%s/paper-%s.jar".formatted(VERSION, VERSION);
+        final var versions = listEntry(serverJar, VERSION, serverPath);
+        entries.put("META-INF/versions.list", versions.getBytes(StandardCharsets.UTF_8));
+        entries.put("META-INF/versions/" + serverPath, serverJar);
+
+        final var libraries = new StringBuilder();
+
+        for (int i = 0; i < options.libraries(); i++) {
+            final var name = "benchmark-lib" + i;
+            final var path = "com/example/%s/1.0/%s-1.0.jar".formatted(name, name);
+            final var library = SyntheticJars.toJar(
+                SyntheticJars.generateClasses("com/example/lib" + i, LIBRARY_CLASSES, 0)
+            );
+
+            libraries.append(listEntry(library, "com.example:" + name + ":1.0", path));
+            entries.put("META-INF/libraries/" + path, library);
+        }
+
+        entries.put("META-INF/libraries.list", libraries.toString().getBytes(StandardCharsets.UTF_8));
+        return SyntheticJars.writeJar(directory.resolve("paperclip.jar"), entries);
+    }
+
+    private static void writeMod(Path mods, int index, List<String> targets) throws IOException {
+        final var id = "benchmark_mod_" + index;
+        final var mixinPackage = "benchmark/mod%d/mixin".formatted(index);
+        final var entries = new LinkedHashMap<String, byte[]>();
+        final var mixins = new ArrayList<String>();
+
+        for (int i = 0; i < targets.size(); i++) {
+            final var name = "TargetMixin" + i;
+            entries.put(mixinPackage + "/" + name + ".class", generateMixin(mixinPackage + "/" + name, targets.get(i)));
+            mixins.add('"' + name + '"');
+        }
+
+        final var modJson = """
+            {"schemaVersion": 1, "id": "%s", "version": "1.0.0", "environment": "*", "mixins": ["%s.mixins.json"]}
+            """.formatted(id, id);
+        final var mixinJson = """
+            {
+              "required": true,
+              "minVersion": "0.8",
+              "package": "%s",
+              "compatibilityLevel": "JAVA_17",
+              "mixins": [%s],
+              "injectors": {"defaultRequire": 1}
+            }
+            """.formatted(mixinPackage.replace('/', '.'), String.join(", ", mixins));
+
+        entries.put("fabric.mod.json", modJson.getBytes(StandardCharsets.UTF_8));
+        entries.put(id + ".mixins.json", mixinJson.getBytes(StandardCharsets.UTF_8));
+        SyntheticJars.writeJar(mods.resolve(id + ".jar"), entries);
+    }
+
+    /**
+     * Generates the fixtures. The directory should be empty or not exist.
+     *
+     * @param directory The server directory.
+     * @param options   What to generate.
+     * @throws IOException If a fixture could not be written.
+     */
+    public static void generate(Path directory, Options options) throws IOException {
+        Files.createDirectories(directory);
+        writePaperclip(directory, options);
+
+        final var mods = Files.createDirectories(directory.resolve("mods"));
+        final var mixins = options.mods() * options.mixinsPerMod();
+        final var stride = Math.max(1, options.classes() / Math.max(1, mixins));
+
+        for (int mod = 0; mod < options.mods(); mod++) {
+            final var targets = new ArrayList<String>();
+
+            for (int i = 0; i < options.mixinsPerMod(); i++) {
+                final var target = (mod * options.mixinsPerMod() + i) * stride;
+
+                if (target < options.classes()) {
+                    targets.add(SyntheticJars.className(GAME_PREFIX, target));
+                }
+            }
+
+            writeMod(mods, mod, targets);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.floweytf.fabricpaperloader.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates jars and class files for benchmarks, so that no real paper jar (or network) is needed.
+ */
+public final class SyntheticJars {
+    private SyntheticJars() {
+    }
+
+    /**
+     * Generates a class with a no-op constructor and a {@code run} method.
+     *
+     * @param internalName   The internal name of the class.
+     * @param callsRerouted  Whether {@code run} calls the methods paperclip reroutes ({@code System.exit},
+     *                       {@code Boolean.getBoolean} and {@code PrintStream.println}).
+     * @param filler         The number of extra instructions in {@code run}, to give the class a realistic size.
+     * @return The class bytes.
+     */
+    public static byte[] generateClass(String internalName, boolean callsRerouted, int filler) {
+        final var writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, internalName, null, "java/lang/Object", null);
+
+        final var init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        final var run = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "run", "()V", null, null);
+        run.visitCode();
+
+        for (int i = 0; i < filler; i++) {
+            run.visitLdcInsn(internalName + i);
+            run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "length", "()I", false);
+            run.visitInsn(Opcodes.POP);
+        }
+
+        if (callsRerouted) {
+            run.visitLdcInsn("paperclip.patchonly");
+            run.visitMethodInsn(
+                Opcodes.INVOKESTATIC, "java/lang/Boolean", "getBoolean", "(Ljava/lang/String;)Z", false
+            );
+            run.visitInsn(Opcodes.POP);
+            run.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", Type.getDescriptor(PrintStream.class));
+            run.visitLdcInsn("hello");
+            run.visitMethodInsn(
+                Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false
+            );
+            run.visitInsn(Opcodes.ICONST_0);
+            run.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/System", "exit", "(I)V", false);
+        }
+
+        run.visitInsn(Opcodes.RETURN);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Gets the internal name of the {@code index}-th class generated by {@link #generateClasses}.
+     */
+    public static String className(String prefix, int index) {
+        return "%s/p%d/C%d".formatted(prefix, index % 16, index);
+    }
+
+    /**
+     * Generates {@code count} classes spread over a handful of packages, keyed by entry name.
+     *
+     * @param prefix        The package prefix, in internal form.
+     * @param count         The number of classes.
+     * @param reroutedEvery Every n-th class calls rerouted methods, 0 for none.
+     * @return The entries.
+     */
+    public static Map<String, byte[]> generateClasses(String prefix, int count, int reroutedEvery) {
+        final var entries = new LinkedHashMap<String, byte[]>();
+
+        for (int i = 0; i < count; i++) {
+            final var name = className(prefix, i);
+            final var rerouted = reroutedEvery > 0 && i % reroutedEvery == 0;
+            entries.put(name + ".class", generateClass(name, rerouted, 32));
+        }
+
+        return entries;
+    }
+
+    public static Path writeJar(Path path, Map<String, byte[]> entries) throws IOException {
+        Files.write(path, toJar(entries));
+        return path;
+    }
+
+    public static byte[] toJar(Map<String, byte[]> entries) throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+
+        try (final var out = new ZipOutputStream(bytes)) {
+            for (final var entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    public static Path writeDirectory(Path path, Map<String, byte[]> entries) throws IOException {
+        for (final var entry : entries.entrySet()) {
+            final var file = path.resolve(entry.getKey());
+            Files.createDirectories(file.getParent());
+            Files.write(file, entry.getValue());
+        }
+
+        return path;
+    }
+
+    public static void delete(Path root) {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
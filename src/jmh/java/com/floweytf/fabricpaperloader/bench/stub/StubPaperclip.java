@@ -0,0 +1,71 @@
+package com.floweytf.fabricpaperloader.bench.stub;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stands in for {@code io.papermc.paperclip.Paperclip} in the startup benchmark's paperclip jar. Like paperclip in
+ * patch-only mode, it extracts the files named by {@code versions.list} and {@code libraries.list} from its own jar
+ * and exits, but there are no patches to apply.
+ * <p>
+ * The class is copied into the fixture under paperclip's name, so it must not reference any other benchmark class.
+ */
+public final class StubPaperclip {
+    private StubPaperclip() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (!Boolean.getBoolean("paperclip.patchonly")) {
+            System.out.println("The stub paperclip only supports patch-only mode");
+            System.exit(1);
+        }
+
+        final var loader = StubPaperclip.class.getClassLoader();
+        final var count = extract(loader, "versions") + extract(loader, "libraries");
+
+        System.out.println("Extracted " + count + " files");
+        System.exit(0);
+    }
+
+    private static int extract(ClassLoader loader, String kind) throws IOException {
+        final var list = loader.getResourceAsStream("META-INF/" + kind + ".list");
+
+        if (list == null) {
+            throw new IOException("Missing " + kind + ".list");
+        }
+
+        var count = 0;
+
+        try (final var reader = new BufferedReader(new InputStreamReader(list, StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                final var path = line.split("\t")[2];
+                final var output = Path.of(kind).resolve(path);
+                Files.createDirectories(output.toAbsolutePath().getParent());
+
+                try (InputStream in = loader.getResourceAsStream("META-INF/" + kind + "/" + path)) {
+                    if (in == null) {
+                        throw new IOException("Missing " + path);
+                    }
+
+                    Files.copy(in, output, StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
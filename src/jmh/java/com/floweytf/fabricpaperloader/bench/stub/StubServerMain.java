@@ -0,0 +1,76 @@
+package com.floweytf.fabricpaperloader.bench.stub;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Stands in for {@code org.bukkit.craftbukkit.Main} in the startup benchmark's game jar. It reports as soon as it is
+ * entered, then loads every class listed in {@link #CLASS_LIST} (so that they all go through the transformers and
+ * the benchmark mods' mixins), reports again and exits.
+ * <p>
+ * Each report is a single line: {@link #MARKER}, the phase, the JVM uptime in milliseconds, the bytes allocated by
+ * live threads and the peak resident set size in KiB ({@code -1} where {@code /proc} is unavailable).
+ * <p>
+ * The class is copied into the fixture under craftbukkit's name, so it must not reference any other benchmark class.
+ */
+public final class StubServerMain {
+    public static final String MARKER = "[startup-benchmark]";
+    public static final String CLASS_LIST = "META-INF/startup-benchmark/classes.list";
+
+    private StubServerMain() {
+    }
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        report("entrypoint");
+
+        final var loader = StubServerMain.class.getClassLoader();
+        final var list = loader.getResourceAsStream(CLASS_LIST);
+
+        if (list == null) {
+            throw new IOException("Missing " + CLASS_LIST);
+        }
+
+        try (final var reader = new BufferedReader(new InputStreamReader(list, StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                Class.forName(line, false, loader);
+            }
+        }
+
+        report("loaded");
+        System.exit(0);
+    }
+
+    private static void report(String phase) {
+        final var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var allocated = 0L;
+
+        for (final var bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            allocated += Math.max(bytes, 0);
+        }
+
+        final var uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        System.out.println(MARKER + " " + phase + " " + uptime + " " + allocated + " " + getPeakRss());
+        System.out.flush();
+    }
+
+    private static long getPeakRss() {
+        try {
+            for (final var line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,60 @@
+package com.floweytf.fabricpaperloader.paperclip;
+
+import com.floweytf.fabricpaperloader.bench.SyntheticJars;
+import com.floweytf.fabricpaperloader.classpath.MappedJar;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures reading {@code META-INF/libraries.list} out of a paperclip jar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibraryListBenchmark {
+    /**
+     * Paper ships roughly 80 libraries.
+     */
+    @Param({"80", "500"})
+    public int libraries;
+
+    private Path root;
+    private MappedJar paperclip;
+
+    @Setup
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("library-list-bench");
+        final var list = new StringBuilder();
+
+        for (int i = 0; i < libraries; i++) {
+            list.append("%064x\tcom.example:lib%d:1.0.%d\tcom/example/lib%d/1.0.%d/lib%d-1.0.%d.jar\n"
+                .formatted(i, i, i, i, i, i, i));
+        }
+
+        final var jar = SyntheticJars.writeJar(
+            root.resolve("paperclip.jar"),
+            Map.of("META-INF/libraries.list", list.toString().getBytes(StandardCharsets.UTF_8))
+        );
+        paperclip = MappedJar.open(jar);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        paperclip.close();
+        SyntheticJars.delete(root);
+    }
+
+    @Benchmark
+    public Map<Path, String> getLibraries() {
+        return PaperclipRunner.getLibraries(paperclip);
+    }
+}
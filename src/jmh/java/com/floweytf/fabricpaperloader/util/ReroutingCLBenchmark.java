@@ -0,0 +1,71 @@
+package com.floweytf.fabricpaperloader.util;
+
+import com.floweytf.fabricpaperloader.bench.SyntheticJars;
+import com.floweytf.fabricpaperloader.paperclip.PaperclipRunner;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures loading every class of a paperclip-like jar through a {@link ReroutingCL}, the way paperclip itself is run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReroutingCLBenchmark {
+    /**
+     * Paperclip itself has a few dozen {@code io.papermc} classes.
+     */
+    @Param({"40", "200"})
+    public int classes;
+
+    /**
+     * Every n-th class calls a rerouted method, 0 for none. Classes that don't are defined without being rewritten.
+     */
+    @Param({"0", "1", "20"})
+    public int reroutedEvery;
+
+    private Path root;
+    private URLClassLoader parent;
+    private List<String> classNames;
+
+    @Setup
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("rerouting-bench");
+        final var entries = SyntheticJars.generateClasses("io/papermc/bench", classes, reroutedEvery);
+        parent = Utils.classLoaderFor(SyntheticJars.writeJar(root.resolve("paperclip.jar"), entries));
+        classNames = entries.keySet().stream()
+            .map(entry -> entry.substring(0, entry.length() - ".class".length()).replace('/', '.'))
+            .toList();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        parent.close();
+        SyntheticJars.delete(root);
+    }
+
+    @Benchmark
+    public ReroutingCL loadAll() throws ClassNotFoundException {
+        final var cl = new ReroutingCL(parent, name -> name.startsWith("io.papermc"))
+            .rerouteS(System.class, "exit", PaperclipRunner.class, "handleExit", void.class, int.class)
+            .rerouteS(Boolean.class, "getBoolean", PaperclipRunner.class, "handleGetBoolean", boolean.class,
+                String.class)
+            .rerouteI(PrintStream.class, "println", PaperclipRunner.class, "handlePrint", void.class, String.class);
+
+        for (final var name : classNames) {
+            cl.loadClass(name);
+        }
+
+        return cl;
+    }
+}
@@ -0,0 +1,179 @@
+package com.floweytf.fabricpaperloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.fabricmc.loader.impl.util.Arguments;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Class Data Sharing support. The launcher and system jars are loaded by the app class loader and never change between
+ * boots, so a CDS archive of them speeds up startup and lets several servers on one host share that memory.
+ * <p>
+ * Training boots the loader in a child JVM up to {@link PaperGameProvider#launch(ClassLoader)}, dumping the loaded
+ * class list, then builds a static archive from it.
+ */
+public final class AppCds {
+    private static final String DEFAULT_ARCHIVE = "loader.jsa";
+
+    private AppCds() {
+    }
+
+    /**
+     * Gets the archive, which by default lives in the loader's cache directory of the game directory the arguments
+     * select, like every other cache.
+     *
+     * @param args The arguments the server is started with.
+     */
+    public static Path getArchive(String[] args) {
+        final var property = System.getProperty(LoaderProperties.CDS_ARCHIVE);
+
+        if (property != null) {
+            return Paths.get(property);
+        }
+
+        final var arguments = new Arguments();
+        arguments.parse(args);
+        return PaperGameProvider.getCacheDirectory(PaperGameProvider.getLaunchDirectory(arguments))
+            .resolve(DEFAULT_ARCHIVE);
+    }
+
+    private static String javaExecutable() {
+        return ProcessHandle.current().info().command()
+            .orElse(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    }
+
+    /**
+     * JVM flags of the current process, minus those controlling CDS which would conflict with training.
+     */
+    private static List<String> inheritedJvmArguments() {
+        return ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+            .filter(arg -> !arg.startsWith("-Xshare"))
+            .filter(arg -> !arg.startsWith("-XX:SharedArchiveFile"))
+            .filter(arg -> !arg.startsWith("-XX:SharedClassListFile"))
+            .filter(arg -> !arg.startsWith("-XX:ArchiveClassesAtExit"))
+            .filter(arg -> !arg.startsWith("-XX:DumpLoadedClassList"))
+            .filter(arg -> !arg.startsWith("-D" + LoaderProperties.CDS_TRAIN))
+            .toList();
+    }
+
+    private static int run(List<String> command) throws IOException, InterruptedException {
+        Log.debug(LogCategory.GAME_PROVIDER, "Running %s", command);
+        return new ProcessBuilder(command).inheritIO().start().waitFor();
+    }
+
+    /**
+     * Runs a training boot and builds the archive.
+     *
+     * @param args The arguments the server would normally be started with.
+     * @return The exit code for the process.
+     */
+    public static int train(String[] args) {
+        final var archive = getArchive(args).toAbsolutePath();
+        final var classList = archive.resolveSibling(archive.getFileName() + ".classlist");
+        final var classPath = System.getProperty("java.class.path");
+
+        try {
+            Files.createDirectories(archive.getParent());
+
+            final var trainingRun = new ArrayList<String>();
+            trainingRun.add(javaExecutable());
+            trainingRun.addAll(inheritedJvmArguments());
+            trainingRun.add("-XX:DumpLoadedClassList=" + classList);
+            trainingRun.add("-D" + LoaderProperties.CDS_TRAINING_RUN + "=true");
+            trainingRun.add("-cp");
+            trainingRun.add(classPath);
+            trainingRun.add(Main.class.getName());
+            trainingRun.addAll(Arrays.asList(args));
+
+            Log.info(LogCategory.GAME_PROVIDER, "Booting the loader to record loaded classes...");
+
+            if (run(trainingRun) != 0) {
+                Log.error(LogCategory.GAME_PROVIDER, "CDS training run failed");
+                return 1;
+            }
+
+            Log.info(LogCategory.GAME_PROVIDER, "Dumping CDS archive to %s", archive);
+
+            final var dump = List.of(
+                javaExecutable(),
+                "-Xshare:dump",
+                "-XX:SharedClassListFile=" + classList,
+                "-XX:SharedArchiveFile=" + archive,
+                "-cp",
+                classPath
+            );
+
+            if (run(dump) != 0) {
+                Log.error(LogCategory.GAME_PROVIDER, "Failed to dump CDS archive");
+                return 1;
+            }
+        } catch (IOException e) {
+            Log.error(LogCategory.GAME_PROVIDER, "Failed to run CDS training", e);
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+
+        Log.info(
+            LogCategory.GAME_PROVIDER,
+            "CDS archive created, start the server with -XX:SharedArchiveFile=%s",
+            archive
+        );
+        return 0;
+    }
+
+    /**
+     * Tells the operator how to use an existing archive if the JVM was not started with it, or that it needs to be
+     * retrained if any classpath jar has changed since it was built (in which case the JVM silently ignores it).
+     *
+     * @param args The arguments the server is started with.
+     */
+    public static void checkArchive(String[] args) {
+        final var archive = getArchive(args);
+
+        if (!Files.isRegularFile(archive)) {
+            return;
+        }
+
+        final var inUse = ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+            .anyMatch(arg -> arg.startsWith("-XX:SharedArchiveFile"));
+
+        if (!inUse) {
+            Log.info(
+                LogCategory.GAME_PROVIDER,
+                "Found CDS archive %s, start the server with -XX:SharedArchiveFile=%s to use it",
+                archive, archive.toAbsolutePath()
+            );
+            return;
+        }
+
+        try {
+            final var archiveTime = Files.getLastModifiedTime(archive);
+
+            for (var entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                final var path = Paths.get(entry);
+
+                if (Files.exists(path) && Files.getLastModifiedTime(path).compareTo(archiveTime) > 0) {
+                    Log.warn(
+                        LogCategory.GAME_PROVIDER,
+                        "%s changed after the CDS archive was built, retrain with -D%s=true",
+                        path, LoaderProperties.CDS_TRAIN
+                    );
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            Log.debug(LogCategory.GAME_PROVIDER, "Failed to check CDS archive freshness", e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.floweytf.fabricpaperloader;
+
+import com.floweytf.fabricpaperloader.paperclip.PaperclipRunner;
+import com.floweytf.fabricpaperloader.paperclip.VersionInfo;
+import com.floweytf.fabricpaperloader.util.Utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import net.fabricmc.loader.impl.util.SystemProperties;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * What {@code locateGame} worked out on a successful boot: paper's version and the classification of every jar. A
+ * later boot whose inputs are unchanged restores it instead of running paperclip and classifying the classpath again.
+ * <p>
+ * The inputs are fingerprinted by path, size and modification time: the launcher classpath, every place paperclip is
+ * looked for, paperclip's output, and the {@code fabric*} system properties. The mod set is not part of the plan,
+ * since fabric resolves it itself.
+ *
+ * @param versionInfo     The version of paper that was launched.
+ * @param classifications The classifications, in the order they were accepted.
+ */
+public record LaunchPlan(VersionInfo versionInfo, List<LibraryClassifier.Classification> classifications) {
+    public static final String FILE_NAME = "launch.plan";
+    private static final int MAGIC = 0x4C504C31; // LPL1
+
+    private static void addFile(StringBuilder builder, Path path) {
+        builder.append(path.toAbsolutePath().normalize());
+
+        try {
+            builder.append(':').append(Files.size(path)).append(':').append(Files.getLastModifiedTime(path).toMillis());
+        } catch (IOException e) {
+            // a file appearing or disappearing must change the fingerprint too
+            builder.append(":missing");
+        }
+
+        builder.append('\n');
+    }
+
+    /**
+     * Fingerprints the inputs of a launch.
+     *
+     * @param version       The version being launched, or {@code null} to only fingerprint what is known before
+     *                      paperclip runs.
+     * @param launcherPaths The launcher classpath.
+     * @return A hex string identifying the inputs.
+     */
+    private static String fingerprint(@Nullable VersionInfo version, Path[] launcherPaths) {
+        final var builder = new StringBuilder().append(MAGIC).append('\n')
+            .append(Runtime.version()).append('\n');
+
+        final var properties = new TreeMap<String, String>();
+        System.getProperties().forEach((key, value) -> {
+            // the loader adds remapped mods to this itself, and the plan does not cover mods anyway
+            if (key.toString().startsWith("fabric") && !key.equals(SystemProperties.ADD_MODS)) {
+                properties.put(key.toString(), value.toString());
+            }
+        });
+        properties.forEach((key, value) -> builder.append(key).append('=').append(value).append('\n'));
+
+        Stream.of(launcherPaths).forEach(path -> addFile(builder, path));
+        PaperclipRunner.getPaperclipCandidates().forEach(path -> addFile(builder, path));
+
+        if (version != null) {
+            builder.append(version.rawVersion()).append('\n');
+            Stream.of(version.requiredLibraries()).forEach(path -> addFile(builder, path));
+            addFile(builder, version.serverJarPath());
+        }
+
+        final var digest = Utils.sha256().digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest);
+    }
+
+    @Nullable
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static VersionInfo readVersion(DataInputStream in) throws IOException {
+        final var version = in.readUTF();
+        final var hash = readNullableUTF(in);
+        final var libraries = new Path[in.readInt()];
+
+        for (int i = 0; i < libraries.length; i++) {
+            libraries[i] = Path.of(in.readUTF());
+        }
+
+        final var serverJarPath = Path.of(in.readUTF());
+        final var hashCount = in.readInt();
+        final var libraryHashes = new HashMap<Path, String>(hashCount * 4 / 3 + 1);
+
+        for (int i = 0; i < hashCount; i++) {
+            libraryHashes.put(Path.of(in.readUTF()), in.readUTF());
+        }
+
+        return new VersionInfo(version, hash, libraries, serverJarPath, libraryHashes);
+    }
+
+    private static void writeVersion(DataOutputStream out, VersionInfo version) throws IOException {
+        out.writeUTF(version.version());
+        writeNullableUTF(out, version.hash());
+        out.writeInt(version.requiredLibraries().length);
+
+        for (final var library : version.requiredLibraries()) {
+            out.writeUTF(library.toString());
+        }
+
+        out.writeUTF(version.serverJarPath().toString());
+        final var libraryHashes = version.libraryHashes() == null ? Map.<Path, String>of() : version.libraryHashes();
+        out.writeInt(libraryHashes.size());
+
+        for (final var entry : libraryHashes.entrySet()) {
+            out.writeUTF(entry.getKey().toString());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    /**
+     * Reads a plan from disk, if its inputs are unchanged.
+     *
+     * @param file          The plan file.
+     * @param launcherPaths The launcher classpath of this boot.
+     * @return The plan, or empty if it does not exist, could not be read, or is out of date.
+     */
+    public static Optional<LaunchPlan> read(Path file, Path[] launcherPaths) {
+        try (final var in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                Log.warn(LogCategory.GAME_PROVIDER, "Ignoring launch plan %s with unknown format", file);
+                return Optional.empty();
+            }
+
+            // checked in two steps, so that paperclip's output is only looked at once we know where it is
+            if (!in.readUTF().equals(fingerprint(null, launcherPaths))) {
+                return Optional.empty();
+            }
+
+            final var versionInfo = readVersion(in);
+
+            if (!in.readUTF().equals(fingerprint(versionInfo, launcherPaths))) {
+                return Optional.empty();
+            }
+
+            final var count = in.readInt();
+            final var classifications = new ArrayList<LibraryClassifier.Classification>(count);
+
+            for (int i = 0; i < count; i++) {
+                final var path = Path.of(in.readUTF());
+                final var category = LibraryCategory.valueOf(in.readUTF());
+                final var packages = new HashSet<String>();
+
+                for (int j = in.readInt(); j > 0; j--) {
+                    packages.add(in.readUTF());
+                }
+
+                classifications.add(new LibraryClassifier.Classification(path, category, packages));
+            }
+
+            return Optional.of(new LaunchPlan(versionInfo, classifications));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException | IllegalArgumentException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to read launch plan " + file, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes this plan to disk, replacing any existing one atomically. Failures are logged, since the plan is only an
+     * optimization.
+     *
+     * @param file          The plan file.
+     * @param launcherPaths The launcher classpath of this boot.
+     */
+    public void write(Path file, Path[] launcherPaths) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            final var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+            try (final var out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(fingerprint(null, launcherPaths));
+                writeVersion(out, versionInfo);
+                out.writeUTF(fingerprint(versionInfo, launcherPaths));
+                out.writeInt(classifications.size());
+
+                for (final var classification : classifications) {
+                    out.writeUTF(classification.path().toString());
+                    out.writeUTF(classification.category().name());
+                    out.writeInt(classification.packages().size());
+
+                    for (final var pkg : classification.packages()) {
+                        out.writeUTF(pkg);
+                    }
+                }
+            }
+
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Log.info(LogCategory.GAME_PROVIDER, "Recorded the launch plan for %s", versionInfo.normalizedVersion());
+        } catch (IOException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to write launch plan " + file, e);
+        }
+    }
+}
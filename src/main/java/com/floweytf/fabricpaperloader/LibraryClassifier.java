@@ -1,75 +1,399 @@
 package com.floweytf.fabricpaperloader;
 
+import com.floweytf.fabricpaperloader.classpath.JarPool;
+import com.floweytf.fabricpaperloader.diagnostics.ClassifyJarEvent;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipError;
-import java.util.zip.ZipFile;
 
 import net.fabricmc.loader.impl.util.log.Log;
 import net.fabricmc.loader.impl.util.log.LogCategory;
 import net.fabricmc.loader.impl.util.log.LogLevel;
+import org.jetbrains.annotations.Nullable;
 
 // TODO: use fabric's own LibClassifier instead of reinventing the wheel
 public class LibraryClassifier {
+    private static final int CACHE_MAGIC = 0x4C434332; // LCC2
+
+    /**
+     * Changes whenever the set of library types changes, so that stale results from another loader version are never
+     * reused.
+     */
+    private static final int CACHE_SCHEMA = Arrays.stream(LibraryType.values())
+        .map(type -> type.name() + type.category + type.path + Arrays.toString(type.classes))
+        .collect(Collectors.joining(";"))
+        .hashCode();
+
+    /**
+     * Maps every probe class entry to the first library type that declares it, so a jar's central directory only
+     * needs to be walked once.
+     */
+    private static final Map<String, LibraryType> PROBES = new HashMap<>();
+
+    static {
+        for (var type : LibraryType.values()) {
+            for (String p : type.classes) {
+                PROBES.putIfAbsent(p, type);
+            }
+        }
+    }
+
+    private record CacheKey(long size, long mtime) {
+    }
+
+    private record CacheEntry(CacheKey key, Scan scan) {
+    }
+
+    /**
+     * Everything learnt from a single pass over a jar or directory.
+     *
+     * @param category The category of the library.
+     * @param packages The packages containing classes, in internal form (e.g. {@code org/bukkit}).
+     */
+    private record Scan(LibraryCategory category, Set<String> packages) {
+    }
+
+    /**
+     * A path as it was recorded by {@link #accept(Batch)}.
+     *
+     * @param path     The path.
+     * @param category The category of the library.
+     * @param packages The packages containing classes, in internal form.
+     */
+    public record Classification(Path path, LibraryCategory category, Set<String> packages) {
+    }
+
+    private final JarPool jarPool;
+    private final List<Classification> accepted = new ArrayList<>();
     private final Map<LibraryCategory, List<Path>> classifications = new EnumMap<>(LibraryCategory.class);
+    private final Map<String, List<Path>> packageIndex = new HashMap<>();
     private final boolean shouldLog = Log.shouldLog(LogLevel.DEBUG, LogCategory.LIB_CLASSIFICATION);
     private boolean isDone = false;
 
-    public void addPaths(Path... paths) {
-        for (Path path : paths) {
-            final var type = classifySingle(path);
-            if (type == null) {
-                continue;
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    @Nullable
+    private Path cacheFile;
+    private volatile boolean isCacheDirty = false;
+
+    /**
+     * @param jarPool The pool to open jars through, so that jars scanned here are not opened again later.
+     */
+    public LibraryClassifier(JarPool jarPool) {
+        this.jarPool = jarPool;
+    }
+
+    /**
+     * Enables the on-disk classification cache, loading any existing results from {@code file}. Jars whose size and
+     * mtime still match a cached result are not opened again.
+     *
+     * @param file The cache file, which is created by {@link #done()} if missing.
+     */
+    public void loadCache(Path file) {
+        this.cacheFile = file;
+
+        try (final var in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_SCHEMA) {
+                Log.debug(LogCategory.LIB_CLASSIFICATION, "discarding outdated classification cache %s", file);
+                return;
             }
-            classifications.computeIfAbsent(type, ignored -> new ArrayList<>()).add(path);
-            if (shouldLog) {
-                Log.debug(LogCategory.LIB_CLASSIFICATION, "classified %s as %s", path, type);
+
+            final var count = in.readInt();
+            final var categories = LibraryCategory.values();
+
+            for (int i = 0; i < count; i++) {
+                final var path = in.readUTF();
+                final var key = new CacheKey(in.readLong(), in.readLong());
+                final var category = categories[in.readUnsignedByte()];
+                final var packages = new String[in.readInt()];
+
+                for (int j = 0; j < packages.length; j++) {
+                    packages[j] = in.readUTF();
+                }
+
+                cache.put(path, new CacheEntry(key, new Scan(category, Set.of(packages))));
+            }
+        } catch (NoSuchFileException e) {
+            // first boot, nothing to load
+        } catch (IOException | ArrayIndexOutOfBoundsException e) {
+            Log.warn(LogCategory.LIB_CLASSIFICATION, "Failed to read classification cache " + file, e);
+            cache.clear();
+        }
+    }
+
+    /**
+     * The scans of a set of paths, produced by {@link #classify(Path...)} and recorded by {@link #accept(Batch)}.
+     */
+    public static final class Batch {
+        private final Path[] paths;
+        private final List<Scan> scans;
+
+        private Batch(Path[] paths, List<Scan> scans) {
+            this.paths = paths;
+            this.scans = scans;
+        }
+    }
+
+    /**
+     * Classifies paths, scanning them in parallel. Results are recorded in the order the paths were given, so the
+     * classification is deterministic regardless of scheduling.
+     */
+    public void addPaths(Path... paths) {
+        accept(classify(paths));
+    }
+
+    /**
+     * Scans paths in parallel without recording the results. This is safe to call from any thread, concurrently with
+     * other calls, so that independent sets of paths can be scanned at the same time.
+     *
+     * @param paths The paths to scan.
+     * @return The scans, to pass to {@link #accept(Batch)}.
+     */
+    public Batch classify(Path... paths) {
+        final var copy = paths.clone();
+        return new Batch(copy, Arrays.stream(copy).parallel().map(this::classifyRecorded).toList());
+    }
+
+    /**
+     * Records the scans of a batch, in the order its paths were given. Batches must be accepted from a single thread,
+     * in classpath order, which makes the result independent of the order they were scanned in.
+     *
+     * @param batch The batch.
+     */
+    public void accept(Batch batch) {
+        for (int i = 0; i < batch.paths.length; i++) {
+            final var scan = batch.scans.get(i);
+
+            if (scan != null) {
+                accept(new Classification(batch.paths[i], scan.category(), scan.packages()));
             }
         }
     }
 
+    /**
+     * Records classifications made by an earlier boot, as returned by {@link #getAccepted()}, without scanning
+     * anything.
+     *
+     * @param restored The classifications, in the order they were accepted.
+     */
+    public void restore(List<Classification> restored) {
+        restored.forEach(this::accept);
+    }
+
+    private void accept(Classification classification) {
+        final var path = classification.path();
+        accepted.add(classification);
+        classifications.computeIfAbsent(classification.category(), ignored -> new ArrayList<>()).add(path);
+        for (String pkg : classification.packages()) {
+            packageIndex.computeIfAbsent(pkg, ignored -> new ArrayList<>(1)).add(path);
+        }
+        if (shouldLog) {
+            Log.debug(LogCategory.LIB_CLASSIFICATION, "classified %s as %s", path, classification.category());
+        }
+    }
+
+    /**
+     * Gets every classification recorded so far, in the order it was recorded.
+     */
+    public List<Classification> getAccepted() {
+        return Collections.unmodifiableList(accepted);
+    }
+
+    /**
+     * Drops everything recorded, once startup is done and nothing will look it up again. Lists already handed out by
+     * the getters are left intact.
+     */
+    public void trim() {
+        accepted.clear();
+        classifications.clear();
+        packageIndex.clear();
+        cache.clear();
+    }
+
     public void done() {
         isDone = true;
+
+        if (cacheFile == null) {
+            return;
+        }
+
+        // only the paths of this boot are kept, so jars of older paper builds and removed mods drop out
+        final var used = accepted.stream()
+            .map(classification -> classification.path().toAbsolutePath().normalize().toString())
+            .collect(Collectors.toSet());
+
+        if (cache.keySet().retainAll(used)) {
+            isCacheDirty = true;
+        }
+
+        if (isCacheDirty) {
+            try {
+                writeCache(cacheFile);
+                isCacheDirty = false;
+            } catch (IOException e) {
+                Log.warn(LogCategory.LIB_CLASSIFICATION, "Failed to write classification cache " + cacheFile, e);
+            }
+        }
     }
 
-    private static LibraryCategory classifySingle(Path path) {
-        if (Files.isDirectory(path)) {
-            for (var type : LibraryType.values()) {
-                if (Objects.equals(type.path, path)) {
-                    return type.category;
-                }
+    private void writeCache(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        final var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (final var out = new DataOutputStream(Files.newOutputStream(tmp))) {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_SCHEMA);
+            out.writeInt(cache.size());
 
-                for (String p : type.classes) {
-                    if (Files.isRegularFile(path.resolve(p))) {
-                        return type.category;
-                    }
+            for (final var entry : cache.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().key().size());
+                out.writeLong(entry.getValue().key().mtime());
+                out.writeByte(entry.getValue().scan().category().ordinal());
+                out.writeInt(entry.getValue().scan().packages().size());
+
+                for (String pkg : entry.getValue().scan().packages()) {
+                    out.writeUTF(pkg);
                 }
             }
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Classifies a path, emitting a {@link ClassifyJarEvent} for it.
+     */
+    @Nullable
+    private Scan classifyRecorded(Path path) {
+        final var event = new ClassifyJarEvent();
+        event.begin();
+        final var scan = classifyCached(path, event);
+
+        if (event.shouldCommit()) {
+            event.path = path.toString();
+            event.category = scan == null ? null : scan.category().name();
+            event.commit();
+        }
+
+        return scan;
+    }
+
+    /**
+     * Classifies a path, consulting the cache for regular jar files. Directories are never cached since their
+     * contents can change without their mtime changing.
+     */
+    @Nullable
+    private Scan classifyCached(Path path, ClassifyJarEvent event) {
+        if (cacheFile == null || !Files.isRegularFile(path)) {
+            return scan(path);
+        }
+
+        final var id = path.toAbsolutePath().normalize().toString();
+        final CacheKey key;
+
+        try {
+            key = new CacheKey(Files.size(path), Files.getLastModifiedTime(path).toMillis());
+        } catch (IOException e) {
+            return scan(path);
+        }
+
+        final var cached = cache.get(id);
+
+        if (cached != null && cached.key().equals(key)) {
+            if (shouldLog) {
+                Log.debug(LogCategory.LIB_CLASSIFICATION, "cache hit for %s", path);
+            }
+
+            event.cached = true;
+            return cached.scan();
+        }
+
+        if (shouldLog) {
+            Log.debug(LogCategory.LIB_CLASSIFICATION, "cache miss for %s", path);
+        }
+
+        final var scan = scan(path);
+
+        if (scan != null) {
+            cache.put(id, new CacheEntry(key, scan));
+            isCacheDirty = true;
+        }
+
+        return scan;
+    }
+
+    /**
+     * Picks the category of the first library type that either is {@code path} or had one of its probe classes seen.
+     */
+    private static LibraryCategory categorize(Path path, Set<LibraryType> seen) {
+        for (var type : LibraryType.values()) {
+            if (Objects.equals(type.path, path) || seen.contains(type)) {
+                return type.category;
+            }
+        }
+
+        return LibraryCategory.OTHER;
+    }
+
+    private static void visitEntry(String name, Set<LibraryType> seen, Set<String> packages) {
+        if (!name.endsWith(".class")) {
+            return;
+        }
+
+        final var type = PROBES.get(name);
+
+        if (type != null) {
+            seen.add(type);
+        }
+
+        final var slash = name.lastIndexOf('/');
+        // multi-release and module metadata are not real packages
+        if (!name.startsWith("META-INF/")) {
+            packages.add(slash == -1 ? "" : name.substring(0, slash));
+        }
+    }
+
+    /**
+     * Reads the listing of a jar or directory once, collecting both its category and its packages.
+     */
+    @Nullable
+    private Scan scan(Path path) {
+        final var seen = EnumSet.noneOf(LibraryType.class);
+        final var packages = new HashSet<String>();
+
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.walk(path)) {
+                files.filter(Files::isRegularFile)
+                    .map(file -> path.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"))
+                    .forEach(name -> visitEntry(name, seen, packages));
+            } catch (IOException e) {
+                throw new RuntimeException("error reading " + path, e);
+            }
         } else {
             if (!path.toString().endsWith(".jar")) {
                 return null;
             }
 
-            try (ZipFile zf = new ZipFile(path.toFile())) {
-                for (var type : LibraryType.values()) {
-                    if (Objects.equals(type.path, path)) {
-                        return type.category;
-                    }
-
-                    for (String p : type.classes) {
-                        if (zf.getEntry(p) != null) {
-                            return type.category;
-                        }
-                    }
+            try {
+                for (final var name : jarPool.get(path).getNames()) {
+                    visitEntry(name, seen, packages);
                 }
             } catch (ZipError | IOException e) {
                 throw new RuntimeException("error reading " + path, e);
             }
         }
 
-        return LibraryCategory.OTHER;
+        return new Scan(categorize(path, seen), Set.copyOf(packages));
     }
 
     public Map<LibraryCategory, List<Path>> getClassifications() {
@@ -95,4 +419,21 @@ public class LibraryClassifier {
     public List<Path> getOtherJars() {
         return getClassifications().getOrDefault(LibraryCategory.OTHER, List.of());
     }
+
+    /**
+     * Gets the index from package (in internal form) to the jars containing classes in it, in classpath order.
+     * Built from the same pass used for classification, so no jar needs to be reopened to answer "where is this
+     * class".
+     */
+    public Map<String, List<Path>> getPackageIndex() {
+        if (!isDone) {
+            Log.warn(LogCategory.LIB_CLASSIFICATION, "package index accessed before expected", new Exception());
+        }
+
+        return packageIndex;
+    }
+
+    public List<Path> getJarsForPackage(String pkg) {
+        return getPackageIndex().getOrDefault(pkg, List.of());
+    }
 }
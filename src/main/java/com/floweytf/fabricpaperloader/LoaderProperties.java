@@ -0,0 +1,117 @@
+package com.floweytf.fabricpaperloader;
+
+/**
+ * System properties understood by the loader, in addition to fabric's own.
+ */
+public final class LoaderProperties {
+    /**
+     * Enables the on-disk cache of mixin-transformed game classes. Classes hitting the cache skip mixin application
+     * entirely. Classes that a mixin config with a plugin targets are never cached, so plugins still see every class
+     * they can affect.
+     */
+    public static final String CLASS_CACHE = "fabric-paper-loader.classCache";
+
+    /**
+     * Runs a CDS training boot instead of starting the server, producing the archive at {@link #CDS_ARCHIVE}.
+     */
+    public static final String CDS_TRAIN = "fabric-paper-loader.cds.train";
+
+    /**
+     * The location of the CDS archive, defaults to {@code .fabric/paper-loader/loader.jsa} in the game directory.
+     */
+    public static final String CDS_ARCHIVE = "fabric-paper-loader.cds.archive";
+
+    /**
+     * Internal, set on the child JVM of a CDS training boot so that paper is never started.
+     */
+    public static final String CDS_TRAINING_RUN = "fabric-paper-loader.cds.trainingRun";
+
+    /**
+     * Prints a timeline of the loader's startup phases at launch. The same phases are always available as JFR events.
+     */
+    public static final String TIMELINE = "fabric-paper-loader.timeline";
+
+    /**
+     * Applies paperclip's patches with the loader's own parallel patcher instead of running paperclip. Falls back to
+     * paperclip whenever the jar's layout is not recognised or the vanilla jar still needs downloading.
+     */
+    public static final String NATIVE_PATCHER = "fabric-paper-loader.nativePatcher";
+
+    /**
+     * Prefetches classes on background threads while paper starts. The first boot records which classes load up to
+     * the end of startup, and later boots with the same paper build and mod set load them ahead of the main thread.
+     */
+    public static final String PREFETCH = "fabric-paper-loader.prefetch";
+
+    /**
+     * Lets game classes that no mixin targets skip the mixin transformer entirely.
+     */
+    public static final String MIXIN_FAST_PATH = "fabric-paper-loader.mixinFastPath";
+
+    /**
+     * Merges the game and library jars into a single uncompressed jar before adding them to Knot's classpath.
+     */
+    public static final String COMPACT_CLASSPATH = "fabric-paper-loader.compactClasspath";
+
+    /**
+     * Records where paper and its libraries are and how every jar is classified once startup is done, and restores
+     * that on later boots whose classpath, paperclip jar, paperclip output and {@code fabric*} properties are
+     * unchanged, skipping paperclip and classification.
+     */
+    public static final String LAUNCH_PLAN = "fabric-paper-loader.launchPlan";
+
+    /**
+     * Once startup is done, drops the loader's own startup state (classifications, the prefetch list and the jars only
+     * read during startup) and logs how much heap and metaspace that reclaimed. The launch arguments and mixin's
+     * bookkeeping are kept, since they are still used after startup. Runs two full collections to measure it.
+     */
+    public static final String MEMORY_TRIM = "fabric-paper-loader.memoryTrim";
+
+    /**
+     * Loads every class in the game jars through the full transformer pipeline instead of starting paper, writes a
+     * report of mixin failures and costs to {@link #AUDIT_REPORT}, and exits with a non-zero code if any class failed.
+     * Also enabled by passing {@code --audit} as the first argument.
+     */
+    public static final String AUDIT = "fabric-paper-loader.audit";
+
+    /**
+     * The location of the audit report, defaults to {@code .fabric/paper-loader/mixin-audit.json}.
+     */
+    public static final String AUDIT_REPORT = "fabric-paper-loader.audit.report";
+
+    /**
+     * The number of threads the audit loads classes on, defaults to the number of processors.
+     */
+    public static final String AUDIT_THREADS = "fabric-paper-loader.audit.threads";
+
+    /**
+     * Adds the methods that mixins pushed past HotSpot's inlining and compilation size limits to the audit report.
+     */
+    public static final String AUDIT_JIT = "fabric-paper-loader.audit.jit";
+
+    /**
+     * The namespace the mods in {@code mods/remap/} are built against, defaults to {@code mojang+yarn}.
+     */
+    public static final String REMAP_NAMESPACE = "fabric-paper-loader.remap.namespace";
+
+    /**
+     * Registers the {@code LoaderMetrics} MBean, with live counters for class loading and transformation.
+     */
+    public static final String METRICS = "fabric-paper-loader.metrics";
+
+    /**
+     * How long, in milliseconds, a class load on the server thread may take before the metrics record it with its
+     * stack. Defaults to 50.
+     */
+    public static final String METRICS_SLOW_LOAD_MILLIS = "fabric-paper-loader.metrics.slowLoadMillis";
+
+    /**
+     * A directory shared by the servers on a host, in which paper's patched jars, its libraries and remapped mods are
+     * stored by hash. Each server links its files to the stored copies, so identical files take up disk space and page
+     * cache once, and a new server links them instead of running paperclip.
+     */
+    public static final String STORE = "fabric-paper-loader.store";
+
+    private LoaderProperties() {
+    }
+}
@@ -1,11 +1,26 @@
 package com.floweytf.fabricpaperloader;
 
+import java.util.Arrays;
+
 import net.fabricmc.loader.impl.launch.knot.KnotServer;
 import org.spongepowered.asm.util.asm.ASM;
 
 public class Main {
+    private static final String AUDIT_ARGUMENT = "--audit";
+
     public static void main(String... args) {
         System.setProperty("fabric.skipMcProvider", "true");
+
+        if (args.length != 0 && args[0].equals(AUDIT_ARGUMENT)) {
+            System.setProperty(LoaderProperties.AUDIT, "true");
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
+        if (Boolean.getBoolean(LoaderProperties.CDS_TRAIN)) {
+            System.exit(AppCds.train(args));
+        }
+
+        AppCds.checkArchive(args);
         KnotServer.main(args);
     }
 }
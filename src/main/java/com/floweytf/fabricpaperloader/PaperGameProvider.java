@@ -1,22 +1,47 @@
 package com.floweytf.fabricpaperloader;
 
+import com.floweytf.fabricpaperloader.audit.JitAnalysis;
+import com.floweytf.fabricpaperloader.audit.MixinAudit;
+import com.floweytf.fabricpaperloader.audit.TransformAudit;
+import com.floweytf.fabricpaperloader.classpath.ClassSource;
+import com.floweytf.fabricpaperloader.classpath.ClasspathCompactor;
+import com.floweytf.fabricpaperloader.classpath.JarPool;
+import com.floweytf.fabricpaperloader.diagnostics.LoaderMetrics;
+import com.floweytf.fabricpaperloader.diagnostics.MemorySnapshot;
+import com.floweytf.fabricpaperloader.diagnostics.OverlapTracker;
+import com.floweytf.fabricpaperloader.diagnostics.StartupTimeline;
+import com.floweytf.fabricpaperloader.paperclip.LibraryVerifier;
 import com.floweytf.fabricpaperloader.paperclip.PaperclipRunner;
+import com.floweytf.fabricpaperloader.paperclip.PatchCache;
 import com.floweytf.fabricpaperloader.paperclip.VersionInfo;
+import com.floweytf.fabricpaperloader.redirect.RedirectRule;
+import com.floweytf.fabricpaperloader.redirect.RedirectTransformer;
+import com.floweytf.fabricpaperloader.remap.ModRemapper;
+import com.floweytf.fabricpaperloader.transform.ClassPrefetcher;
+import com.floweytf.fabricpaperloader.transform.MixinTargetIndex;
+import com.floweytf.fabricpaperloader.transform.MixinTransformerHook;
+import com.floweytf.fabricpaperloader.transform.ModSetFingerprint;
+import com.floweytf.fabricpaperloader.transform.StartupMonitor;
+import com.floweytf.fabricpaperloader.transform.TransformStage;
+import com.floweytf.fabricpaperloader.transform.TransformedClassCache;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.nio.file.FileSystems;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.function.Consumer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import net.fabricmc.loader.impl.FabricLoaderImpl;
 import net.fabricmc.loader.impl.FormattedException;
 import net.fabricmc.loader.impl.game.GameProvider;
 import net.fabricmc.loader.impl.game.patch.GameTransformer;
@@ -24,6 +49,7 @@ import net.fabricmc.loader.impl.launch.FabricLauncher;
 import net.fabricmc.loader.impl.metadata.BuiltinModMetadata;
 import net.fabricmc.loader.impl.metadata.ContactInformationImpl;
 import net.fabricmc.loader.impl.util.Arguments;
+import net.fabricmc.loader.impl.util.SystemProperties;
 import net.fabricmc.loader.impl.util.UrlUtil;
 import net.fabricmc.loader.impl.util.log.Log;
 import net.fabricmc.loader.impl.util.log.LogCategory;
@@ -34,19 +60,84 @@ import net.fabricmc.loader.impl.util.log.LogCategory;
 public class PaperGameProvider implements GameProvider {
     public static final String SERVER_ENTRYPOINT = "org.bukkit.craftbukkit.Main";
     public static final String PROPERTY_PAPER_DIRECTORY = "gameDirectory";
+    private static final String CACHE_DIRECTORY = "paper-loader";
+    private static final String CLASSIFIER_CACHE_FILE = "classifier.cache";
+    private static final String CLASS_CACHE_DIRECTORY = "classes";
+    private static final String COMPACT_DIRECTORY = "classpath";
+    private static final String AUDIT_REPORT_FILE = "mixin-audit.json";
+    private static final String REMAP_DIRECTORY = "remap";
+    private static final String REMAPPED_DIRECTORY = "remapped";
 
-    private static final GameTransformer TRANSFORMER = new PaperGameTransformer();
+    private static final PaperGameTransformer TRANSFORMER = new PaperGameTransformer();
 
     private Arguments arguments;
-    private final LibraryClassifier classifier = new LibraryClassifier();
+    private final JarPool jarPool = new JarPool();
+    private final LibraryClassifier classifier = new LibraryClassifier(jarPool);
+    private final StartupMonitor startupMonitor = new StartupMonitor();
     private VersionInfo versionInfo;
-
-    private static Path getLaunchDirectory(Arguments arguments) {
+    private String modSetFingerprint;
+    private Set<String> modPackages;
+    // dropped by trimMemory, on the startup monitor's thread
+    private volatile List<String> prefetchList;
+    private List<Path> gameClassPath;
+    private TransformAudit transformAudit;
+
+    static Path getLaunchDirectory(Arguments arguments) {
         return Paths.get(arguments.getOrDefault(PROPERTY_PAPER_DIRECTORY, "."));
     }
 
-    private void withFiles(Path[] path, Consumer<Path> consumer) throws IOException {
-        Arrays.stream(path).filter(Files::isRegularFile).forEach(consumer);
+    /**
+     * The directory where the loader keeps its own caches, next to fabric's.
+     *
+     * @param launchDirectory The game directory.
+     */
+    static Path getCacheDirectory(Path launchDirectory) {
+        return launchDirectory.resolve(FabricLoaderImpl.CACHE_DIR_NAME).resolve(CACHE_DIRECTORY);
+    }
+
+    private Path getCacheDirectory() {
+        return getCacheDirectory(getLaunchDirectory());
+    }
+
+    /**
+     * The fingerprint of the mod set, only available once fabric has resolved mods.
+     */
+    private String getModSetFingerprint() {
+        if (modSetFingerprint == null) {
+            modSetFingerprint = ModSetFingerprint.compute(versionInfo);
+        }
+
+        return modSetFingerprint;
+    }
+
+    /**
+     * The packages, in internal form, that mods have classes in. Only available once fabric has resolved mods.
+     */
+    private Set<String> getModPackages() {
+        if (modPackages == null) {
+            try (var ignored = StartupTimeline.phase("collect mod packages")) {
+                modPackages = ClassSource.collectModPackages();
+            }
+        }
+
+        return modPackages;
+    }
+
+    /**
+     * The packages, in internal form, that are only found in the game jars.
+     */
+    private Set<String> getGamePackages() {
+        final var gameJars = Set.copyOf(classifier.getGameJars());
+        final var modPackages = getModPackages();
+
+        return classifier.getPackageIndex().entrySet().stream()
+            .filter(entry -> gameJars.containsAll(entry.getValue()) && !modPackages.contains(entry.getKey()))
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toUnmodifiableSet());
+    }
+
+    private static Path[] existingFiles(Path[] paths) {
+        return Arrays.stream(paths).filter(Files::isRegularFile).toArray(Path[]::new);
     }
 
     /**
@@ -143,50 +234,150 @@ public class PaperGameProvider implements GameProvider {
 
     @Override
     public boolean locateGame(FabricLauncher launcher, String[] args) {
+        try (var ignored = StartupTimeline.phase("locateGame")) {
+            return locateGame0(launcher, args);
+        }
+    }
+
+    private boolean locateGame0(FabricLauncher launcher, String[] args) {
         this.arguments = new Arguments();
         this.arguments.parse(args);
 
-        classifier.addPaths(UrlUtil.LOADER_CODE_SOURCE);
-        launcher.getClassPath().forEach(classifier::addPaths);
+        classifier.loadCache(getCacheDirectory().resolve(CLASSIFIER_CACHE_FILE));
+
+        final var launcherPaths = Stream.concat(
+            Stream.of(UrlUtil.LOADER_CODE_SOURCE),
+            launcher.getClassPath().stream()
+        ).toArray(Path[]::new);
 
         // Skip paperclip loading i.f.f. we are in a dev env, this enables us to not have paperclip.jar in run/
         // when doing an IDE run
-        if (launcher.isDevelopment()) {
-            classifier.done(); // early finish classifier
-            final var gameJars = classifier.getGameJars();
+        if (!launcher.isDevelopment()) {
+            return locateProductionGame(launcherPaths);
+        }
+
+        try (var ignored = StartupTimeline.phase("classify launcher classpath")) {
+            classifier.addPaths(launcherPaths);
+        }
 
-            if (gameJars.isEmpty()) {
-                return false; // somehow, we could not find paper in the dev env... bail.
+        classifier.done(); // early finish classifier
+        final var gameJars = classifier.getGameJars();
+
+        if (gameJars.isEmpty()) {
+            return false; // somehow, we could not find paper in the dev env... bail.
+        }
+
+        try {
+            final var versionJson = jarPool.get(gameJars.get(0)).read("version.json");
+
+            if (versionJson == null) {
+                throw new IOException("version.json is missing");
             }
 
-            try (
-                final var fs = FileSystems.newFileSystem(gameJars.get(0));
-                final var reader = Files.newBufferedReader(fs.getPath("version.json"))
-            ) {
-                final var object = new Gson().fromJson(reader, JsonObject.class);
-                this.versionInfo = new VersionInfo(object.get("id").getAsString(), null, null, null);
-            } catch (IOException e) {
-                Log.error(LogCategory.DISCOVERY, "failed to find version.json from game jar", e);
-                return false;
+            final var object = new Gson().fromJson(
+                new String(versionJson, StandardCharsets.UTF_8),
+                JsonObject.class
+            );
+            this.versionInfo = new VersionInfo(object.get("id").getAsString(), null, null, null, null);
+        } catch (IOException e) {
+            Log.error(LogCategory.DISCOVERY, "failed to find version.json from game jar", e);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Waits for a background stage that is no longer needed, so that it does not keep using the classifier once
+     * locating the game has failed. Its outcome is ignored.
+     */
+    private static void awaitQuietly(CompletableFuture<?> stage) {
+        stage.handle((result, error) -> null).join();
+    }
+
+    /**
+     * Locates paper by running paperclip. The stages overlap where they do not depend on each other: the launcher
+     * classpath is classified while paperclip runs, and paper's libraries are classified while paperclip's output is
+     * verified. The classifications are then accepted in classpath order, so the result does not depend on which
+     * stage finished first.
+     * <p>
+     * With {@link LoaderProperties#LAUNCH_PLAN}, all of this is skipped when a plan from an earlier boot with the same
+     * inputs exists, and a new plan is written once startup is done otherwise.
+     */
+    private boolean locateProductionGame(Path[] launcherPaths) {
+        final var planFile = Boolean.getBoolean(LoaderProperties.LAUNCH_PLAN)
+            ? getCacheDirectory().resolve(LaunchPlan.FILE_NAME)
+            : null;
+
+        if (planFile != null) {
+            final var plan = LaunchPlan.read(planFile, launcherPaths);
+
+            if (plan.isPresent()) {
+                this.versionInfo = plan.get().versionInfo();
+                classifier.restore(plan.get().classifications());
+                classifier.done();
+                Log.info(LogCategory.GAME_PROVIDER, "Restored the launch plan for %s", versionInfo.normalizedVersion());
+                return true;
             }
-        } else {
-            final var paperclipResult = PaperclipRunner.launchPaperclip(); // Invoke paperclip
+        }
+
+        final var overlap = new OverlapTracker("Locating paper");
 
-            if (paperclipResult.isEmpty()) {
-                return false;
+        final var launcherScan = CompletableFuture.supplyAsync(overlap.track(() -> {
+            try (var ignored = StartupTimeline.phase("classify launcher classpath")) {
+                return classifier.classify(launcherPaths);
             }
+        }));
 
-            this.versionInfo = paperclipResult.get();
+        final Optional<VersionInfo> paperclipResult;
 
-            // Scan runtime stuff
-            try {
-                withFiles(versionInfo.requiredLibraries(), classifier::addPaths);
-                classifier.addPaths(versionInfo.serverJarPath());
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+        try {
+            paperclipResult = overlap.track(
+                () -> PaperclipRunner.launchPaperclip(getCacheDirectory(), jarPool)
+            ).get();
+        } catch (RuntimeException e) {
+            awaitQuietly(launcherScan);
+            throw e;
+        }
+
+        if (paperclipResult.isEmpty()) {
+            awaitQuietly(launcherScan);
+            return false;
+        }
+
+        this.versionInfo = paperclipResult.get();
+
+        // Hash paperclip's output while the libraries are being classified
+        final var verification = overlap.track(LibraryVerifier.verifyAsync(
+            versionInfo,
+            getCacheDirectory().resolve(PatchCache.FILE_NAME)
+        ));
+
+        final var paperPaths = Stream.concat(
+            Arrays.stream(existingFiles(versionInfo.requiredLibraries())),
+            Stream.of(versionInfo.serverJarPath())
+        ).toArray(Path[]::new);
+
+        final var paperScan = overlap.track(() -> {
+            try (var ignored = StartupTimeline.phase("classify paper libraries")) {
+                return classifier.classify(paperPaths);
             }
+        }).get();
 
-            classifier.done();
+        try {
+            classifier.accept(launcherScan.join());
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+
+        classifier.accept(paperScan);
+        classifier.done();
+        LibraryVerifier.join(verification);
+        overlap.report();
+
+        if (planFile != null) {
+            final var plan = new LaunchPlan(versionInfo, List.copyOf(classifier.getAccepted()));
+            startupMonitor.onDone(() -> plan.write(planFile, launcherPaths));
         }
 
         return true;
@@ -205,7 +396,85 @@ public class PaperGameProvider implements GameProvider {
                 classifier.getSystemJars().stream()
             ).collect(Collectors.toUnmodifiableSet())
         );
-        TRANSFORMER.locateEntrypoints(launcher, classifier.getGameJars());
+
+        try (var ignored = StartupTimeline.phase("locateEntrypoints")) {
+            TRANSFORMER.locateEntrypoints(launcher, classifier.getGameJars());
+        }
+
+        if (!launcher.isDevelopment()) {
+            remapMods(launcher);
+        }
+    }
+
+    /**
+     * Remaps the mods in {@code mods/remap/} to paper's runtime names and hands the result to fabric's discovery,
+     * which runs right after this and does not look into subdirectories of {@code mods/} itself.
+     */
+    private void remapMods(FabricLauncher launcher) {
+        final var input = getLaunchDirectory().resolve("mods").resolve(REMAP_DIRECTORY);
+
+        if (!Files.isDirectory(input)) {
+            return;
+        }
+
+        final List<Path> remapped;
+
+        try (var ignored = StartupTimeline.phase("remap mods")) {
+            remapped = ModRemapper.remap(
+                input,
+                getCacheDirectory().resolve(REMAPPED_DIRECTORY),
+                versionInfo,
+                jarPool,
+                getRemapClassPath(),
+                launcher.getTargetNamespace()
+            );
+        } catch (IOException e) {
+            throw new FormattedException("Failed to remap mods", e);
+        }
+
+        if (remapped.isEmpty()) {
+            return;
+        }
+
+        final var mods = remapped.stream().map(Path::toString).collect(Collectors.toCollection(ArrayList::new));
+        final var existing = System.getProperty(SystemProperties.ADD_MODS);
+
+        if (existing != null && !existing.isEmpty()) {
+            mods.add(0, existing);
+        }
+
+        System.setProperty(SystemProperties.ADD_MODS, String.join(File.pathSeparator, mods));
+    }
+
+    /**
+     * Gets every jar the remapped mods may extend or call into: the game and its libraries, the loader with mixin, and
+     * the mods that are loaded without remapping.
+     */
+    private List<Path> getRemapClassPath() {
+        final var classPath = new ArrayList<>(classifier.getGameJars());
+        classPath.addAll(classifier.getOtherJars());
+        classPath.addAll(classifier.getLauncherJars());
+        classPath.addAll(classifier.getSystemJars());
+
+        final var mods = new ArrayList<Path>();
+
+        try (Stream<Path> files = Files.list(getLaunchDirectory().resolve("mods"))) {
+            files.forEach(mods::add);
+        } catch (IOException e) {
+            Log.debug(LogCategory.GAME_PROVIDER, "Failed to list mods for remapping: %s", e);
+        }
+
+        final var added = System.getProperty(SystemProperties.ADD_MODS);
+
+        if (added != null && !added.isEmpty()) {
+            Arrays.stream(added.split(File.pathSeparator)).map(Paths::get).forEach(mods::add);
+        }
+
+        mods.stream()
+            .filter(mod -> mod.getFileName().toString().endsWith(".jar") && Files.isRegularFile(mod))
+            .forEach(classPath::add);
+
+        return classPath;
     }
 
     @Override
@@ -215,12 +484,217 @@ public class PaperGameProvider implements GameProvider {
 
     @Override
     public void unlockClassPath(FabricLauncher launcher) {
-        classifier.getGameJars().forEach(launcher::addToClassPath);
-        classifier.getOtherJars().forEach(launcher::addToClassPath);
+        try (var ignored = StartupTimeline.phase("unlockClassPath")) {
+            final var jars = new ArrayList<>(classifier.getGameJars());
+            jars.addAll(classifier.getOtherJars());
+
+            final var classPath = getGameClassPath(launcher, jars);
+            classPath.forEach(launcher::addToClassPath);
+            gameClassPath = classPath;
+
+            installClassSource(jars, classPath);
+            installRedirects();
+            installTransformStages(launcher);
+        }
+    }
+
+    /**
+     * Gets the jars to add to Knot's classpath: the game jars followed by the other jars, or a single compacted jar
+     * holding both.
+     */
+    private List<Path> getGameClassPath(FabricLauncher launcher, List<Path> classPath) {
+        if (!Boolean.getBoolean(LoaderProperties.COMPACT_CLASSPATH) || launcher.isDevelopment()) {
+            return classPath;
+        }
+
+        if (!ClasspathCompactor.canCompact(classPath)) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Not compacting the classpath, it contains directories");
+            return classPath;
+        }
+
+        try (var ignored = StartupTimeline.phase("compact classpath")) {
+            return List.of(ClasspathCompactor.compact(getCacheDirectory().resolve(COMPACT_DIRECTORY), classPath));
+        } catch (IOException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to compact the classpath", e);
+            return classPath;
+        }
+    }
+
+    /**
+     * Lets the game transformer serve class bytes for the game classpath from the jar pool.
+     *
+     * @param jars      The game and other jars, in classpath order.
+     * @param classPath What was actually added to Knot's classpath, either {@code jars} or the compacted jar.
+     */
+    private void installClassSource(List<Path> jars, List<Path> classPath) {
+        // directories (dev env) are left to Knot, which also keeps the classpath order intact
+        if (!jars.stream().allMatch(Files::isRegularFile)) {
+            return;
+        }
+
+        var packageIndex = classifier.getPackageIndex();
+        ClassSource.reportDuplicates(jarPool, jars, packageIndex);
+
+        if (!classPath.equals(jars)) {
+            // every package of the original jars now lives in the compacted one
+            final var compacted = List.of(classPath.get(0));
+            final var inputs = Set.copyOf(jars);
+
+            packageIndex = packageIndex.entrySet().stream()
+                .filter(entry -> entry.getValue().stream().anyMatch(inputs::contains))
+                .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, entry -> compacted));
+        }
+
+        try {
+            TRANSFORMER.setClassSource(ClassSource.open(jarPool, classPath, packageIndex, getModPackages()));
+        } catch (IOException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to open the game classpath, Knot will read classes itself", e);
+        }
+    }
+
+    private void installRedirects() {
+        final var rules = RedirectRule.collectFromMods();
+
+        if (!rules.isEmpty()) {
+            Log.info(LogCategory.GAME_PROVIDER, "Applying %d redirects declared by mods", rules.size());
+            TRANSFORMER.setRedirects(RedirectTransformer.create(rules, getModPackages()));
+        }
+    }
+
+    private void installTransformStages(FabricLauncher launcher) {
+        final var stages = new ArrayList<TransformStage>();
+        // an audit loads classes in no particular order and needs mixin to see every one of them
+        final var isAuditing = Boolean.getBoolean(LoaderProperties.AUDIT);
+
+        if (Boolean.getBoolean(LoaderProperties.PREFETCH) && !isAuditing) {
+            final var file = getCacheDirectory().resolve(ClassPrefetcher.FILE_NAME);
+            final var recorded = ClassPrefetcher.read(file, getModSetFingerprint());
+
+            if (recorded.isPresent()) {
+                prefetchList = recorded.get();
+            } else {
+                final var recorder = new ClassPrefetcher.Recorder();
+                stages.add(recorder);
+                startupMonitor.onDone(() -> recorder.write(file, getModSetFingerprint()));
+            }
+        }
+
+        if (Boolean.getBoolean(LoaderProperties.MIXIN_FAST_PATH)) {
+            final var index = new MixinTargetIndex(getGamePackages());
+            stages.add(index);
+            startupMonitor.onDone(() -> Log.info(
+                LogCategory.GAME_PROVIDER,
+                "Mixin fast path: %d classes skipped mixin, %d went through it",
+                index.getFastPathCount(), index.getSlowPathCount()
+            ));
+        }
+
+        // mods in a dev env are directories, which the fingerprint cannot see changes in
+        if (Boolean.getBoolean(LoaderProperties.CLASS_CACHE) && !launcher.isDevelopment() && !isAuditing) {
+            try {
+                stages.add(TransformedClassCache.open(
+                    getCacheDirectory().resolve(CLASS_CACHE_DIRECTORY),
+                    getModSetFingerprint(),
+                    name -> classExists(launcher, name)
+                ));
+            } catch (IOException e) {
+                Log.warn(LogCategory.GAME_PROVIDER, "Failed to open transformed class cache", e);
+            }
+        }
+
+        // registered last, so that the other listeners still see everything this drops
+        if (Boolean.getBoolean(LoaderProperties.MEMORY_TRIM)) {
+            startupMonitor.onDone(this::trimMemory);
+        }
+
+        // the monitor goes first so that it sees every class, including cache hits
+        if ((startupMonitor.hasListeners() || prefetchList != null) && !isAuditing) {
+            stages.add(0, startupMonitor);
+        }
+
+        if (Boolean.getBoolean(LoaderProperties.METRICS)) {
+            final var metrics = new LoaderMetrics(Long.getLong(LoaderProperties.METRICS_SLOW_LOAD_MILLIS, 50));
+            stages.add(0, metrics.classStage());
+            stages.add(metrics.mixinStage());
+            metrics.register();
+        }
+
+        // innermost, so that it sees exactly what mixin is given and returns
+        if (isAuditing) {
+            transformAudit = new TransformAudit(
+                Boolean.getBoolean(LoaderProperties.AUDIT_JIT) ? new JitAnalysis() : null
+            );
+            stages.add(transformAudit);
+        }
+
+        if (!stages.isEmpty()) {
+            MixinTransformerHook.install(launcher, stages);
+        }
+    }
+
+    /**
+     * Checks whether a class can be found on the classpath, as opposed to being generated by mixin.
+     *
+     * @param name The internal name of the class.
+     */
+    private static boolean classExists(FabricLauncher launcher, String name) {
+        if (ClassLoader.getSystemResource(name + ".class") != null) {
+            return true;
+        }
+
+        try {
+            return launcher.getClassByteArray(name.replace('/', '.'), false) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Drops the state only needed to start paper, once it has started. Mixin's own bookkeeping is left alone, since it
+     * is consulted for every class loaded later, and so are the launch arguments, which fabric may still ask for. Runs
+     * on the startup monitor's thread; the game class path it reads was set before that thread was started.
+     */
+    private void trimMemory() {
+        final var before = MemorySnapshot.capture();
+
+        classifier.trim();
+        // the jars scanned during classification, and paperclip, are not read again
+        jarPool.retain(gameClassPath);
+        prefetchList = null;
+
+        Log.info(
+            LogCategory.GAME_PROVIDER,
+            "Trimmed loader state after startup, reclaimed %s",
+            MemorySnapshot.capture().describeReclaimed(before)
+        );
     }
 
     @Override
     public void launch(ClassLoader loader) {
+        StartupTimeline.print();
+
+        if (Boolean.getBoolean(LoaderProperties.CDS_TRAINING_RUN)) {
+            Log.info(LogCategory.GAME_PROVIDER, "CDS training boot complete, not starting paper");
+            return;
+        }
+
+        if (transformAudit != null) {
+            final var report = System.getProperty(LoaderProperties.AUDIT_REPORT);
+            System.exit(MixinAudit.run(
+                transformAudit,
+                jarPool,
+                classifier.getGameJars(),
+                loader,
+                report == null ? getCacheDirectory().resolve(AUDIT_REPORT_FILE) : Paths.get(report)
+            ));
+        }
+
+        final var prefetch = prefetchList;
+
+        if (prefetch != null) {
+            ClassPrefetcher.replay(prefetch, loader, startupMonitor);
+        }
+
         try {
             Class<?> main = loader.loadClass(this.getEntrypoint());
             Method method = main.getMethod("main", String[].class);
@@ -1,9 +1,47 @@
 package com.floweytf.fabricpaperloader;
 
+import com.floweytf.fabricpaperloader.classpath.ClassSource;
+import com.floweytf.fabricpaperloader.redirect.RedirectTransformer;
+
 import net.fabricmc.loader.impl.game.patch.GameTransformer;
+import org.jetbrains.annotations.Nullable;
 
 public class PaperGameTransformer extends GameTransformer {
+    @Nullable
+    private volatile ClassSource classSource;
+    @Nullable
+    private volatile RedirectTransformer redirects;
+
     public PaperGameTransformer() {
         super();
     }
+
+    /**
+     * Sets where unpatched game classes are read from. Knot asks the game transformer for every class before reading
+     * it itself, so this lets class bytes bypass Knot's own jar handling.
+     *
+     * @param classSource The source, or {@code null} to leave every class to Knot.
+     */
+    public void setClassSource(@Nullable ClassSource classSource) {
+        this.classSource = classSource;
+    }
+
+    /**
+     * Sets the redirects to apply to game classes before they reach fabric's transforms and mixin.
+     *
+     * @param redirects The redirects, or {@code null} for none.
+     */
+    public void setRedirects(@Nullable RedirectTransformer redirects) {
+        this.redirects = redirects;
+    }
+
+    @Override
+    public byte[] transform(String className) {
+        final var patched = super.transform(className);
+        final var source = classSource;
+        final var bytes = patched != null || source == null ? patched : source.getClassBytes(className);
+        final var currentRedirects = redirects;
+
+        return currentRedirects == null ? bytes : currentRedirects.transform(className, bytes);
+    }
 }
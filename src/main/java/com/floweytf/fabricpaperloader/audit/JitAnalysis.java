@@ -0,0 +1,275 @@
+package com.floweytf.fabricpaperloader.audit;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Finds methods that mixins pushed past HotSpot's bytecode size limits: {@code FreqInlineSize}, above which a hot
+ * method is no longer inlined into its callers, and {@code HugeMethodLimit}, above which a method is never compiled
+ * at all. Both are read from the running JVM, so the report matches the flags the server runs with.
+ * <p>
+ * Growth is attributed through the {@code @MixinMerged} annotation mixin leaves on everything it merges: a merged
+ * method is charged to its own mixin, and any other method to the mixins whose merged methods it now calls, which is
+ * how injectors hook into a target.
+ */
+public class JitAnalysis {
+    private static final String MIXIN_MERGED = "Lorg/spongepowered/asm/mixin/transformer/meta/MixinMerged;";
+    private static final int DEFAULT_FREQ_INLINE_SIZE = 325;
+    private static final int DEFAULT_HUGE_METHOD_LIMIT = 8000;
+
+    /**
+     * A bytecode size limit.
+     *
+     * @param flag  The name of the JVM flag.
+     * @param limit The largest method size, in bytes, still within the limit.
+     */
+    public record Threshold(String flag, int limit) {
+    }
+
+    /**
+     * A method that crossed a threshold.
+     *
+     * @param className       The binary name of the class.
+     * @param method          The name and descriptor of the method.
+     * @param originalSize    The size of the method's code before mixin, or {@code -1} if a mixin added it.
+     * @param transformedSize The size of the method's code after mixin.
+     * @param threshold       The threshold crossed.
+     * @param mixins          The class names of the mixins responsible, empty if none could be identified.
+     */
+    public record Finding(
+        String className,
+        String method,
+        int originalSize,
+        int transformedSize,
+        Threshold threshold,
+        Set<String> mixins
+    ) {
+    }
+
+    private final List<Threshold> thresholds;
+    private final Queue<Finding> findings = new ConcurrentLinkedQueue<>();
+
+    public JitAnalysis() {
+        this.thresholds = readThresholds();
+    }
+
+    private static List<Threshold> readThresholds() {
+        final var thresholds = new ArrayList<Threshold>();
+
+        try {
+            final var diagnostics = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            thresholds.add(new Threshold(
+                "FreqInlineSize",
+                Integer.parseInt(diagnostics.getVMOption("FreqInlineSize").getValue())
+            ));
+
+            // huge methods are only left interpreted while this is on, which it is by default
+            if (Boolean.parseBoolean(diagnostics.getVMOption("DontCompileHugeMethods").getValue())) {
+                thresholds.add(new Threshold(
+                    "HugeMethodLimit",
+                    Integer.parseInt(diagnostics.getVMOption("HugeMethodLimit").getValue())
+                ));
+            }
+        } catch (RuntimeException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Could not read this JVM's JIT limits, assuming HotSpot's defaults");
+            thresholds.clear();
+            thresholds.add(new Threshold("FreqInlineSize", DEFAULT_FREQ_INLINE_SIZE));
+            thresholds.add(new Threshold("HugeMethodLimit", DEFAULT_HUGE_METHOD_LIMIT));
+        }
+
+        return List.copyOf(thresholds);
+    }
+
+    private static int skipAttributes(ClassReader reader, int offset) {
+        final var count = reader.readUnsignedShort(offset);
+        offset += 2;
+
+        for (int i = 0; i < count; i++) {
+            offset += 6 + reader.readInt(offset + 2);
+        }
+
+        return offset;
+    }
+
+    /**
+     * Reads the size of every method's code straight from the class file, since ASM does not expose it.
+     *
+     * @return The code size of each method with code, keyed by name and descriptor.
+     */
+    static Map<String, Integer> readCodeSizes(byte[] bytes) {
+        final var reader = new ClassReader(bytes);
+        final var buffer = new char[reader.getMaxStringLength()];
+        final var sizes = new HashMap<String, Integer>();
+
+        // access flags, this class and super class, then the interfaces
+        var offset = reader.header + 6;
+        offset += 2 + reader.readUnsignedShort(offset) * 2;
+
+        final var fields = reader.readUnsignedShort(offset);
+        offset += 2;
+
+        for (int i = 0; i < fields; i++) {
+            offset = skipAttributes(reader, offset + 6);
+        }
+
+        final var methods = reader.readUnsignedShort(offset);
+        offset += 2;
+
+        for (int i = 0; i < methods; i++) {
+            final var method = reader.readUTF8(offset + 2, buffer) + reader.readUTF8(offset + 4, buffer);
+            final var attributes = reader.readUnsignedShort(offset + 6);
+            offset += 8;
+
+            for (int j = 0; j < attributes; j++) {
+                final var length = reader.readInt(offset + 2);
+
+                if (reader.readUTF8(offset, buffer).equals("Code")) {
+                    // max_stack and max_locals come before code_length
+                    sizes.put(method, reader.readInt(offset + 10));
+                }
+
+                offset += 6 + length;
+            }
+        }
+
+        return sizes;
+    }
+
+    /**
+     * Gets the mixin a method was merged from. Mixin makes {@code @MixinMerged} a visible annotation, but invisible
+     * ones are accepted as well.
+     *
+     * @return The class name of the mixin, or {@code null} if the method is the target's own.
+     */
+    @Nullable
+    private static String getMergedFrom(MethodNode method) {
+        final var mixin = getMergedFrom(method.visibleAnnotations);
+        return mixin != null ? mixin : getMergedFrom(method.invisibleAnnotations);
+    }
+
+    @Nullable
+    private static String getMergedFrom(@Nullable List<AnnotationNode> annotations) {
+        if (annotations == null) {
+            return null;
+        }
+
+        for (final var annotation : annotations) {
+            if (!annotation.desc.equals(MIXIN_MERGED) || annotation.values == null) {
+                continue;
+            }
+
+            for (int i = 0; i + 1 < annotation.values.size(); i += 2) {
+                if (annotation.values.get(i).equals("mixin")) {
+                    return (String) annotation.values.get(i + 1);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Compares a class before and after mixin, recording every method that crossed a threshold.
+     *
+     * @param name        The binary name of the class.
+     * @param original    The class as mixin received it.
+     * @param transformed The class as mixin returned it.
+     */
+    public void inspect(String name, byte[] original, byte[] transformed) {
+        if (original == transformed) {
+            return;
+        }
+
+        final var before = readCodeSizes(original);
+        final var after = readCodeSizes(transformed);
+        final var crossed = new HashMap<String, Threshold>();
+
+        after.forEach((method, size) -> {
+            final var previous = before.getOrDefault(method, -1);
+
+            // report the largest limit crossed, which is the one that hurts most
+            for (final var threshold : thresholds) {
+                if (size > threshold.limit() && previous <= threshold.limit()) {
+                    crossed.merge(method, threshold, (a, b) -> a.limit() >= b.limit() ? a : b);
+                }
+            }
+        });
+
+        if (crossed.isEmpty()) {
+            return;
+        }
+
+        final var node = new ClassNode();
+        new ClassReader(transformed).accept(node, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        final var merged = new HashMap<String, String>();
+
+        for (final var method : node.methods) {
+            final var mixin = getMergedFrom(method);
+
+            if (mixin != null) {
+                merged.put(method.name + method.desc, mixin);
+            }
+        }
+
+        for (final var method : node.methods) {
+            final var key = method.name + method.desc;
+            final var threshold = crossed.get(key);
+
+            if (threshold == null) {
+                continue;
+            }
+
+            final var mixins = new TreeSet<String>();
+
+            if (merged.containsKey(key)) {
+                mixins.add(merged.get(key));
+            } else {
+                for (final var insn : method.instructions) {
+                    if (insn instanceof MethodInsnNode call && call.owner.equals(node.name)) {
+                        final var mixin = merged.get(call.name + call.desc);
+
+                        if (mixin != null) {
+                            mixins.add(mixin);
+                        }
+                    }
+                }
+            }
+
+            findings.add(new Finding(
+                name,
+                key,
+                before.getOrDefault(key, -1),
+                after.get(key),
+                threshold,
+                mixins
+            ));
+        }
+    }
+
+    public List<Threshold> getThresholds() {
+        return thresholds;
+    }
+
+    public List<Finding> getFindings() {
+        return List.copyOf(findings);
+    }
+}
@@ -0,0 +1,438 @@
+package com.floweytf.fabricpaperloader.audit;
+
+import com.floweytf.fabricpaperloader.LoaderProperties;
+import com.floweytf.fabricpaperloader.classpath.JarPool;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.FabricUtil;
+import org.spongepowered.asm.mixin.extensibility.IMixinConfig;
+import org.spongepowered.asm.mixin.extensibility.IMixinInfo;
+import org.spongepowered.asm.mixin.transformer.ClassInfo;
+import org.spongepowered.asm.mixin.transformer.throwables.InvalidMixinException;
+
+/**
+ * Loads every class in the game jars through Knot, with every mod's mixins applied, instead of starting paper. This
+ * finds mixins that fail to apply without booting a server, and measures what the mixins cost.
+ * <p>
+ * Classes are loaded but not initialized, spread over a {@link ForkJoinPool}. Mixin application itself is serialized
+ * by mixin, so the pool mostly overlaps reading and defining classes with it.
+ * <p>
+ * With a {@link JitAnalysis}, the report also lists the methods mixins pushed past HotSpot's size limits.
+ */
+public class MixinAudit {
+    private final TransformAudit transforms;
+    private final Map<String, String> failures = new ConcurrentHashMap<>();
+
+    /**
+     * The totals for one mixin config.
+     */
+    private static final class ConfigTotals {
+        @Nullable
+        private final String modId;
+        private final Set<String> classes = new TreeSet<>();
+        private final Set<String> failed = new TreeSet<>();
+        private long nanos;
+        private long sizeDelta;
+
+        private ConfigTotals(@Nullable String modId) {
+            this.modId = modId;
+        }
+    }
+
+    /**
+     * A class listed in the report.
+     *
+     * @param name      The binary name of the class.
+     * @param entry     Its transformation, or {@code null} if it was loaded before the audit.
+     * @param sizeDelta The change in size mixin made.
+     * @param mixins    The mixins applied to it.
+     * @param failure   Why it failed to load, or {@code null}.
+     */
+    private record ClassResult(
+        String name,
+        @Nullable TransformAudit.Entry entry,
+        int sizeDelta,
+        List<IMixinInfo> mixins,
+        @Nullable String failure
+    ) {
+    }
+
+    private MixinAudit(TransformAudit transforms) {
+        this.transforms = transforms;
+    }
+
+    /**
+     * Lists the classes in a set of jars.
+     *
+     * @return The binary names of the classes, excluding module and package descriptors and versioned entries.
+     */
+    private static List<String> listClasses(JarPool pool, List<Path> jars) throws IOException {
+        final var names = new TreeSet<String>();
+
+        for (final var jar : jars) {
+            for (final var entry : pool.get(jar).getNames()) {
+                if (!entry.endsWith(".class") || entry.startsWith("META-INF/") ||
+                    entry.endsWith("module-info.class") || entry.endsWith("package-info.class")) {
+                    continue;
+                }
+
+                names.add(entry.substring(0, entry.length() - ".class".length()).replace('/', '.'));
+            }
+        }
+
+        return List.copyOf(names);
+    }
+
+    private static String describe(Throwable error) {
+        for (var cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InvalidMixinException) {
+                return cause.toString();
+            }
+        }
+
+        var root = error;
+
+        while (root.getCause() != null) {
+            root = root.getCause();
+        }
+
+        return root == error ? error.toString() : error + ", caused by " + root;
+    }
+
+    @Nullable
+    private static IMixinInfo findFailedMixin(Throwable error) {
+        for (var cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InvalidMixinException invalid && invalid.getMixin() != null) {
+                return invalid.getMixin();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the mixins applied to a class, once it has been loaded.
+     */
+    static Set<IMixinInfo> getAppliedMixins(String name) {
+        final var info = ClassInfo.forName(name);
+        return info == null ? Set.of() : info.getAppliedMixins();
+    }
+
+    /**
+     * Gets the mod that declared a config.
+     */
+    @Nullable
+    static String getModId(IMixinConfig config) {
+        return config.hasDecoration(FabricUtil.KEY_MOD_ID) ? config.getDecoration(FabricUtil.KEY_MOD_ID) : null;
+    }
+
+    /**
+     * Loads the classes.
+     *
+     * @param names       The binary names of the classes.
+     * @param loader      Knot's class loader.
+     * @param parallelism The number of threads to load classes on.
+     * @return The time taken, in nanoseconds.
+     */
+    private long load(List<String> names, ClassLoader loader, int parallelism) {
+        final var pool = new ForkJoinPool(parallelism);
+        final var start = System.nanoTime();
+
+        try {
+            pool.submit(() -> names.parallelStream().forEach(name -> {
+                try {
+                    Class.forName(name, false, loader);
+                } catch (ClassNotFoundException | LinkageError | RuntimeException e) {
+                    failures.put(name, describe(e));
+                }
+            })).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to load game classes", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading game classes", e);
+        } finally {
+            pool.shutdown();
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Writes the report of the classes loaded by {@link #load(List, ClassLoader, int)}. Only classes that mixins
+     * applied to or that failed to load are listed individually. Each config is charged the full time and size change
+     * of every class it applied to, shared with any other config applying to the same class.
+     *
+     * @param file        The report file.
+     * @param names       The binary names of the classes.
+     * @param loadNanos   The time taken to load them.
+     * @param parallelism The number of threads they were loaded on.
+     * @return The number of classes that failed.
+     * @throws IOException If the report could not be written.
+     */
+    private int writeReport(Path file, List<String> names, long loadNanos, int parallelism) throws IOException {
+        final var results = new ArrayList<ClassResult>();
+        final var configs = new TreeMap<String, ConfigTotals>();
+        var transformNanos = 0L;
+        var failed = 0;
+
+        for (final var name : names) {
+            final var entry = transforms.get(name);
+            final var error = entry == null ? null : entry.error();
+            final var failure = error != null ? describe(error) : failures.get(name);
+            final var mixins = new ArrayList<>(getAppliedMixins(name));
+            mixins.sort(Comparator.comparing(IMixinInfo::getClassName));
+
+            if (entry != null) {
+                transformNanos += entry.nanos();
+            }
+
+            if (failure != null) {
+                failed++;
+            }
+
+            final var failedMixin = error == null ? null : findFailedMixin(error);
+
+            if (failedMixin != null) {
+                totals(configs, failedMixin.getConfig()).failed.add(name);
+            }
+
+            if (mixins.isEmpty() && failure == null) {
+                continue;
+            }
+
+            final var sizeDelta = entry == null || error != null ? 0 : entry.transformedSize() - entry.originalSize();
+
+            mixins.stream().map(IMixinInfo::getConfig).distinct().forEach(config -> {
+                final var totals = totals(configs, config);
+                totals.classes.add(name);
+
+                if (entry != null) {
+                    totals.nanos += entry.nanos();
+                    totals.sizeDelta += sizeDelta;
+                }
+            });
+
+            results.add(new ClassResult(name, entry, sizeDelta, mixins, failure));
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        final var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (final var out = new JsonWriter(Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))) {
+            final var seconds = loadNanos / 1e9;
+
+            out.setIndent("  ");
+            out.beginObject();
+            out.name("classes").value(names.size());
+            out.name("failed").value(failed);
+            out.name("threads").value(parallelism);
+            out.name("wallMillis").value(millis(loadNanos));
+            out.name("transformMillis").value(millis(transformNanos));
+            out.name("classesPerSecond").value(seconds == 0 ? 0 : Math.round(names.size() / seconds));
+
+            out.name("configs").beginArray();
+
+            for (final var config : configs.entrySet()) {
+                final var totals = config.getValue();
+                out.beginObject();
+                out.name("name").value(config.getKey());
+                out.name("mod").value(totals.modId);
+                out.name("classes").value(totals.classes.size());
+                out.name("transformMillis").value(millis(totals.nanos));
+                out.name("sizeDelta").value(totals.sizeDelta);
+                out.name("failed").beginArray();
+
+                for (final var name : totals.failed) {
+                    out.value(name);
+                }
+
+                out.endArray();
+                out.endObject();
+            }
+
+            out.endArray();
+
+            if (transforms.getJitAnalysis() != null) {
+                writeJitReport(out, transforms.getJitAnalysis());
+            }
+
+            out.name("classList").beginArray();
+
+            for (final var result : results) {
+                out.beginObject();
+                out.name("name").value(result.name());
+
+                if (result.entry() != null) {
+                    out.name("transformMicros").value(TimeUnit.NANOSECONDS.toMicros(result.entry().nanos()));
+                    out.name("originalSize").value(result.entry().originalSize());
+                    out.name("sizeDelta").value(result.sizeDelta());
+                }
+
+                out.name("mixins").beginArray();
+
+                for (final var mixin : result.mixins()) {
+                    out.value(mixin.getClassName());
+                }
+
+                out.endArray();
+
+                if (result.failure() != null) {
+                    out.name("error").value(result.failure());
+                }
+
+                out.endObject();
+            }
+
+            out.endArray();
+            out.endObject();
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Log.info(
+            LogCategory.GAME_PROVIDER,
+            "Audited %d classes in %d ms on %d threads, %d mixin configs applied, %d classes failed. Report: %s",
+            names.size(), millis(loadNanos), parallelism, configs.size(), failed, file
+        );
+
+        return failed;
+    }
+
+    /**
+     * Runs the audit.
+     *
+     * @param transforms The stage recording each transformation, which must be installed.
+     * @param pool       The pool to read the game jars through.
+     * @param gameJars   The game jars.
+     * @param loader     Knot's class loader.
+     * @param report     The report file.
+     * @return The exit code for the process: {@code 0} if every class loaded, {@code 1} otherwise.
+     */
+    public static int run(
+        TransformAudit transforms,
+        JarPool pool,
+        List<Path> gameJars,
+        ClassLoader loader,
+        Path report
+    ) {
+        final var parallelism = Integer.getInteger(
+            LoaderProperties.AUDIT_THREADS,
+            Runtime.getRuntime().availableProcessors()
+        );
+
+        try {
+            final var names = listClasses(pool, gameJars);
+            Log.info(LogCategory.GAME_PROVIDER, "Auditing %d classes on %d threads", names.size(), parallelism);
+
+            final var audit = new MixinAudit(transforms);
+            final var loadNanos = audit.load(names, loader, parallelism);
+            return audit.writeReport(report, names, loadNanos, parallelism) == 0 ? 0 : 1;
+        } catch (IOException e) {
+            Log.error(LogCategory.GAME_PROVIDER, "Mixin audit failed", e);
+            return 1;
+        }
+    }
+
+    /**
+     * Writes the methods that mixins pushed past a JIT limit, each with the mixins and mods responsible.
+     */
+    private static void writeJitReport(JsonWriter out, JitAnalysis analysis) throws IOException {
+        final var findings = new ArrayList<>(analysis.getFindings());
+        findings.sort(Comparator.comparing(JitAnalysis.Finding::className).thenComparing(JitAnalysis.Finding::method));
+
+        out.name("jit").beginObject();
+        out.name("thresholds").beginObject();
+
+        for (final var threshold : analysis.getThresholds()) {
+            out.name(threshold.flag()).value(threshold.limit());
+        }
+
+        out.endObject();
+        out.name("methods").beginArray();
+        var unattributed = 0;
+
+        for (final var finding : findings) {
+            final var applied = new HashMap<String, IMixinInfo>();
+            getAppliedMixins(finding.className()).forEach(mixin -> applied.put(mixin.getClassName(), mixin));
+
+            // mixins were applied, so the merged members should have named them
+            if (finding.mixins().isEmpty() && !applied.isEmpty()) {
+                unattributed++;
+            }
+
+            out.beginObject();
+            out.name("class").value(finding.className());
+            out.name("method").value(finding.method());
+            out.name("originalSize").value(finding.originalSize());
+            out.name("transformedSize").value(finding.transformedSize());
+            out.name("threshold").value(finding.threshold().flag());
+            out.name("limit").value(finding.threshold().limit());
+            out.name("mixins").beginArray();
+
+            for (final var name : finding.mixins()) {
+                final var mixin = applied.get(name);
+                out.beginObject();
+                out.name("name").value(name);
+
+                if (mixin != null) {
+                    out.name("config").value(mixin.getConfig().getName());
+                    out.name("mod").value(getModId(mixin.getConfig()));
+                }
+
+                out.endObject();
+            }
+
+            out.endArray();
+            out.endObject();
+        }
+
+        out.endArray();
+        out.endObject();
+
+        if (!findings.isEmpty()) {
+            Log.warn(
+                LogCategory.GAME_PROVIDER,
+                "Mixins pushed %d methods past a JIT limit, see the \"jit\" section of the report",
+                findings.size()
+            );
+        }
+
+        if (unattributed != 0) {
+            Log.warn(
+                LogCategory.GAME_PROVIDER,
+                "Could not tell which mixins grew %d methods past a JIT limit, their mixins are listed per class",
+                unattributed
+            );
+        }
+    }
+
+    private static ConfigTotals totals(Map<String, ConfigTotals> configs, IMixinConfig config) {
+        return configs.computeIfAbsent(config.getName(), ignored -> new ConfigTotals(getModId(config)));
+    }
+}
@@ -0,0 +1,93 @@
+package com.floweytf.fabricpaperloader.audit;
+
+import com.floweytf.fabricpaperloader.transform.TransformStage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Records what mixin did to each class it was handed. Installed as the innermost stage, so that it sees the bytes
+ * exactly as mixin receives and returns them, which it also hands to the {@link JitAnalysis} if there is one.
+ */
+public class TransformAudit implements TransformStage {
+    /**
+     * The transformation of a single class.
+     *
+     * @param originalSize    The size of the class before mixin, in bytes.
+     * @param transformedSize The size of the class after mixin, in bytes, or {@code -1} if it failed.
+     * @param nanos           The time spent in mixin, excluding any class loads nested in it.
+     * @param error           Why mixin failed, or {@code null}.
+     */
+    public record Entry(int originalSize, int transformedSize, long nanos, @Nullable Throwable error) {
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ThreadLocal<long[]> nested = ThreadLocal.withInitial(() -> new long[1]);
+    @Nullable
+    private final JitAnalysis jitAnalysis;
+
+    /**
+     * @param jitAnalysis The analysis to run on every transformed class, or {@code null}.
+     */
+    public TransformAudit(@Nullable JitAnalysis jitAnalysis) {
+        this.jitAnalysis = jitAnalysis;
+    }
+
+    @Override
+    public byte[] transform(String name, byte[] bytes, UnaryOperator<byte[]> next) {
+        final var counter = nested.get();
+        final var outer = counter[0];
+        counter[0] = 0;
+
+        final var start = System.nanoTime();
+        byte[] result = null;
+        Throwable error = null;
+
+        try {
+            result = next.apply(bytes);
+        } catch (RuntimeException | Error e) {
+            error = e;
+            throw e;
+        } finally {
+            final var elapsed = System.nanoTime() - start;
+            entries.put(name, new Entry(
+                bytes.length,
+                result == null ? -1 : result.length,
+                elapsed - counter[0],
+                error
+            ));
+            counter[0] = outer + elapsed;
+        }
+
+        if (jitAnalysis != null) {
+            try {
+                jitAnalysis.inspect(name, bytes, result);
+            } catch (RuntimeException e) {
+                Log.warn(LogCategory.GAME_PROVIDER, "Failed to analyse " + name, e);
+            }
+        }
+
+        return result;
+    }
+
+    @Nullable
+    public JitAnalysis getJitAnalysis() {
+        return jitAnalysis;
+    }
+
+    /**
+     * Gets the transformation of a class.
+     *
+     * @param name The binary name of the class.
+     * @return The transformation, or {@code null} if the class never went through mixin.
+     */
+    @Nullable
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+}
@@ -0,0 +1,252 @@
+package com.floweytf.fabricpaperloader.classpath;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import net.fabricmc.loader.api.FabricLoader;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Serves the bytes of classes on the game classpath straight from {@link MappedJar}s, so that Knot does not have to
+ * stream them out of its own copy of the jar.
+ * <p>
+ * Reads are routed through the package index built during classification: a class is read from the one jar containing
+ * its package, and only packages split across several jars are searched, in classpath order. Only class bytes are
+ * served. Knot still looks up every class's resource on its own classpath to find its code source, and classes this
+ * does not serve (including ones that exist nowhere) fall back to Knot, which searches every jar on its classpath.
+ * <p>
+ * Knot puts mods ahead of the game jars on its classpath, so a mod may shadow a game or library class. Packages that
+ * any mod has classes in are therefore never served, leaving those lookups to Knot.
+ */
+public class ClassSource {
+    private static final int MAX_REPORTED_DUPLICATES = 20;
+
+    private final Map<String, MappedJar[]> routes;
+
+    private ClassSource(Map<String, MappedJar[]> routes) {
+        this.routes = routes;
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Resolves the package index against a classpath.
+     *
+     * @return For each package with classes on the classpath, the positions in the classpath of the jars containing
+     * it, in classpath order.
+     */
+    private static Map<String, int[]> route(List<Path> classPath, Map<String, List<Path>> packageIndex) {
+        final var positions = new HashMap<Path, Integer>();
+
+        for (int i = 0; i < classPath.size(); i++) {
+            positions.putIfAbsent(normalize(classPath.get(i)), i);
+        }
+
+        final var routes = new HashMap<String, int[]>();
+
+        for (final var entry : packageIndex.entrySet()) {
+            final var route = entry.getValue().stream()
+                .map(path -> positions.get(normalize(path)))
+                .filter(Objects::nonNull)
+                .mapToInt(Integer::intValue)
+                .distinct()
+                .sorted()
+                .toArray();
+
+            if (route.length != 0) {
+                routes.put(entry.getKey(), route);
+            }
+        }
+
+        return routes;
+    }
+
+    /**
+     * Creates a source for the given classpath.
+     *
+     * @param pool             The pool to open jars through.
+     * @param classPath        The jars, in the order they are on Knot's classpath.
+     * @param packageIndex     The jars containing each package, in internal form, as recorded by the classifier.
+     * @param excludedPackages The packages, in internal form, to leave to Knot.
+     * @return The source.
+     * @throws IOException If a jar could not be opened.
+     */
+    public static ClassSource open(
+        JarPool pool,
+        List<Path> classPath,
+        Map<String, List<Path>> packageIndex,
+        Set<String> excludedPackages
+    ) throws IOException {
+        final var jars = new MappedJar[classPath.size()];
+
+        for (int i = 0; i < jars.length; i++) {
+            jars[i] = pool.get(classPath.get(i));
+        }
+
+        final var routes = new HashMap<String, MappedJar[]>();
+        var split = 0;
+
+        for (final var entry : route(classPath, packageIndex).entrySet()) {
+            if (excludedPackages.contains(entry.getKey())) {
+                continue;
+            }
+
+            final var route = Arrays.stream(entry.getValue()).mapToObj(i -> jars[i]).toArray(MappedJar[]::new);
+            routes.put(entry.getKey(), route);
+
+            if (entry.getValue().length > 1) {
+                split++;
+            }
+        }
+
+        Log.debug(
+            LogCategory.GAME_PROVIDER,
+            "Routing %d packages over %d jars, %d of them split",
+            routes.size(), jars.length, split
+        );
+
+        return new ClassSource(routes);
+    }
+
+    /**
+     * Warns about classes that more than one jar on the classpath provides, which usually means two versions of the
+     * same library. Only packages split across jars can contain such classes, so only those are listed.
+     *
+     * @param pool         The pool to open jars through.
+     * @param classPath    The jars, in the order they are on Knot's classpath.
+     * @param packageIndex The jars containing each package, in internal form, as recorded by the classifier.
+     */
+    public static void reportDuplicates(JarPool pool, List<Path> classPath, Map<String, List<Path>> packageIndex) {
+        final var splitPackages = new HashSet<String>();
+        final var splitJars = new TreeSet<Integer>();
+
+        for (final var entry : route(classPath, packageIndex).entrySet()) {
+            if (entry.getValue().length > 1) {
+                splitPackages.add(entry.getKey());
+                Arrays.stream(entry.getValue()).forEach(splitJars::add);
+            }
+        }
+
+        final var owners = new HashMap<String, Path>();
+        final var duplicates = new ArrayList<String>();
+
+        for (final int position : splitJars) {
+            final var path = classPath.get(position);
+            final Set<String> names;
+
+            try {
+                names = pool.get(path).getNames();
+            } catch (IOException e) {
+                Log.warn(LogCategory.GAME_PROVIDER, "Failed to list " + path, e);
+                continue;
+            }
+
+            for (final var name : names) {
+                final var slash = name.lastIndexOf('/');
+
+                if (!name.endsWith(".class") || !splitPackages.contains(slash == -1 ? "" : name.substring(0, slash))) {
+                    continue;
+                }
+
+                final var owner = owners.putIfAbsent(name, path);
+
+                if (owner != null) {
+                    duplicates.add("* %s in %s, shadowed by %s".formatted(name, path, owner));
+                }
+            }
+        }
+
+        if (duplicates.isEmpty()) {
+            return;
+        }
+
+        Collections.sort(duplicates);
+
+        Log.warn(
+            LogCategory.GAME_PROVIDER,
+            "%d classes are provided by more than one jar, only the first on the classpath is used:\n%s%s",
+            duplicates.size(),
+            String.join("\n", duplicates.subList(0, Math.min(duplicates.size(), MAX_REPORTED_DUPLICATES))),
+            duplicates.size() > MAX_REPORTED_DUPLICATES ? "\n* ..." : ""
+        );
+    }
+
+    /**
+     * Collects the packages, in internal form, that the resolved mods have classes in. Builtin mods (including paper
+     * itself) are skipped.
+     */
+    public static Set<String> collectModPackages() {
+        final var packages = new HashSet<String>();
+
+        for (final var mod : FabricLoader.getInstance().getAllMods()) {
+            if (mod.getMetadata().getType().equals("builtin")) {
+                continue;
+            }
+
+            for (final var root : mod.getRootPaths()) {
+                try (Stream<Path> files = Files.walk(root)) {
+                    files.map(root::relativize)
+                        .filter(file -> file.toString().endsWith(".class"))
+                        .map(file -> file.getParent() == null ? "" : file.getParent().toString())
+                        .map(pkg -> pkg.replace(root.getFileSystem().getSeparator(), "/"))
+                        .forEach(packages::add);
+                } catch (IOException | UncheckedIOException e) {
+                    final var id = mod.getMetadata().getId();
+                    Log.warn(LogCategory.GAME_PROVIDER, "Failed to list classes of mod " + id, e);
+                }
+            }
+        }
+
+        return packages;
+    }
+
+    /**
+     * Reads a class from the first jar containing it.
+     *
+     * @param name The binary name of the class.
+     * @return The class bytes, or {@code null} to let Knot read the class from its own classpath.
+     */
+    @Nullable
+    public byte[] getClassBytes(String name) {
+        final var dot = name.lastIndexOf('.');
+        final var route = routes.get(dot == -1 ? "" : name.substring(0, dot).replace('.', '/'));
+
+        if (route == null) {
+            return null;
+        }
+
+        final var entry = name.replace('.', '/') + ".class";
+
+        for (final var jar : route) {
+            try {
+                final var bytes = jar.read(entry);
+
+                if (bytes != null) {
+                    return bytes;
+                }
+            } catch (IOException e) {
+                Log.warn(LogCategory.GAME_PROVIDER, "Failed to read " + entry + " from " + jar.getPath(), e);
+                return null;
+            }
+        }
+
+        return null;
+    }
+}
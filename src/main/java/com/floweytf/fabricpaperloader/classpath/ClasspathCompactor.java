@@ -0,0 +1,305 @@
+package com.floweytf.fabricpaperloader.classpath;
+
+import com.floweytf.fabricpaperloader.util.Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Merges several jars into a single jar whose entries are all STORED, so that Knot has one classpath root to search
+ * and reading a class never needs inflating. The merged jar's central directory is the lookup index; it is rebuilt
+ * only when one of the input jars changes.
+ * <p>
+ * Jars are merged in classpath order and the first jar containing an entry wins, except that service files are
+ * concatenated and log4j's plugin caches (which both paper and log4j-core ship) are merged entry by entry, as log4j's
+ * own shade transformer does. Multi-release jars are flattened to the entries for the running Java version,
+ * signatures are dropped since they cannot survive the merge, and the manifest is taken from the first jar.
+ */
+public final class ClasspathCompactor {
+    /**
+     * Bumped whenever the layout of the merged jar changes.
+     */
+    private static final int FORMAT = 2;
+    private static final String SERVICES = "META-INF/services/";
+    private static final String LOG4J_PLUGINS =
+        "META-INF/org/apache/logging/log4j/core/config/plugins/Log4j2Plugins.dat";
+
+    /**
+     * An entry of a log4j plugin cache, other than its key and category.
+     */
+    private record Log4jPlugin(String className, String name, boolean printable, boolean defer) {
+    }
+
+    private ClasspathCompactor() {
+    }
+
+    private static String fingerprint(List<Path> inputs) throws IOException {
+        final var builder = new StringBuilder()
+            .append(FORMAT).append('\n')
+            .append(Runtime.version().feature()).append('\n');
+
+        for (final var input : inputs) {
+            builder.append(input.toAbsolutePath().normalize())
+                .append(':').append(Files.size(input))
+                .append(':').append(Files.getLastModifiedTime(input).toMillis())
+                .append('\n');
+        }
+
+        final var digest = Utils.sha256().digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest, 0, 16);
+    }
+
+    private static boolean isExcluded(String name) {
+        if (name.equals(JarFile.MANIFEST_NAME) || name.endsWith("module-info.class")) {
+            return true;
+        }
+
+        // a jar index would point lookups at the original jars
+        if (name.equals("META-INF/INDEX.LIST")) {
+            return true;
+        }
+
+        // only reachable through a jar that is not multi-release, where they are dead weight anyway
+        if (name.startsWith("META-INF/versions/")) {
+            return true;
+        }
+
+        if (name.startsWith("META-INF/") && name.indexOf('/', "META-INF/".length()) == -1) {
+            return name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC") ||
+                name.startsWith("META-INF/SIG-");
+        }
+
+        return false;
+    }
+
+    private static void writeStored(ZipOutputStream out, String name, byte[] data, long time) throws IOException {
+        final var crc = new CRC32();
+        crc.update(data);
+
+        final var entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+
+        if (time != -1) {
+            entry.setTime(time);
+        }
+
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static void writeManifest(ZipOutputStream out, Manifest source) throws IOException {
+        final var manifest = new Manifest(source);
+        // multi-release entries have already been resolved
+        manifest.getMainAttributes().remove(Attributes.Name.MULTI_RELEASE);
+
+        final var bytes = new ByteArrayOutputStream();
+        manifest.write(bytes);
+        writeStored(out, JarFile.MANIFEST_NAME, bytes.toByteArray(), -1);
+    }
+
+    /**
+     * Adds the plugins of a cache to the merged ones, keeping the first plugin of each key, the way log4j's
+     * {@code PluginCache} loads several caches.
+     */
+    private static void readLog4jPlugins(
+        byte[] data,
+        Map<String, Map<String, Log4jPlugin>> plugins
+    ) throws IOException {
+        final var in = new DataInputStream(new ByteArrayInputStream(data));
+
+        for (int i = in.readInt(); i > 0; i--) {
+            final var category = plugins.computeIfAbsent(
+                in.readUTF().toLowerCase(Locale.ROOT),
+                ignored -> new LinkedHashMap<>()
+            );
+
+            for (int j = in.readInt(); j > 0; j--) {
+                final var key = in.readUTF();
+                final var plugin = new Log4jPlugin(in.readUTF(), in.readUTF(), in.readBoolean(), in.readBoolean());
+                category.putIfAbsent(key, plugin);
+            }
+        }
+    }
+
+    private static byte[] writeLog4jPlugins(Map<String, Map<String, Log4jPlugin>> plugins) throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+
+        try (final var out = new DataOutputStream(bytes)) {
+            out.writeInt(plugins.size());
+
+            for (final var category : plugins.entrySet()) {
+                out.writeUTF(category.getKey());
+                out.writeInt(category.getValue().size());
+
+                for (final var entry : category.getValue().entrySet()) {
+                    final var plugin = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(plugin.className());
+                    out.writeUTF(plugin.name());
+                    out.writeBoolean(plugin.printable());
+                    out.writeBoolean(plugin.defer());
+                }
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static void merge(Path output, List<Path> inputs) throws IOException {
+        final var written = new HashSet<String>();
+        final var services = new LinkedHashMap<String, ByteArrayOutputStream>();
+        final var log4jPlugins = new LinkedHashMap<String, Map<String, Log4jPlugin>>();
+
+        try (final var out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+            out.setMethod(ZipOutputStream.STORED);
+
+            for (int i = 0; i < inputs.size(); i++) {
+                try (final var jar = new JarFile(inputs.get(i).toFile(), false, ZipFile.OPEN_READ, Runtime.version())) {
+                    if (i == 0 && jar.getManifest() != null) {
+                        writeManifest(out, jar.getManifest());
+                    }
+
+                    for (final var entry : (Iterable<JarEntry>) jar.versionedStream()::iterator) {
+                        final var name = entry.getName();
+
+                        if (isExcluded(name)) {
+                            continue;
+                        }
+
+                        if (name.startsWith(SERVICES) && !entry.isDirectory()) {
+                            final var merged = services.computeIfAbsent(name, ignored -> new ByteArrayOutputStream());
+
+                            final byte[] contents;
+
+                            try (final var in = jar.getInputStream(entry)) {
+                                contents = in.readAllBytes();
+                            }
+
+                            merged.write(contents);
+
+                            if (contents.length != 0 && contents[contents.length - 1] != '\n') {
+                                merged.write('\n');
+                            }
+
+                            continue;
+                        }
+
+                        if (name.equals(LOG4J_PLUGINS)) {
+                            try (final var in = jar.getInputStream(entry)) {
+                                readLog4jPlugins(in.readAllBytes(), log4jPlugins);
+                            }
+
+                            continue;
+                        }
+
+                        if (!written.add(name)) {
+                            continue;
+                        }
+
+                        try (final var in = jar.getInputStream(entry)) {
+                            writeStored(out, name, in.readAllBytes(), entry.getTime());
+                        }
+                    }
+                }
+            }
+
+            for (final var service : services.entrySet()) {
+                writeStored(out, service.getKey(), service.getValue().toByteArray(), -1);
+            }
+
+            if (!log4jPlugins.isEmpty()) {
+                writeStored(out, LOG4J_PLUGINS, writeLog4jPlugins(log4jPlugins), -1);
+            }
+        }
+    }
+
+    private static void deleteStale(Path directory, Path keep) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> !file.equals(keep)).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Gets the merged jar for the given inputs, building it if none exists for their current contents.
+     *
+     * @param directory The directory to keep merged jars in. Merged jars of other inputs are deleted.
+     * @param inputs    The jars to merge, in classpath order. The first one provides the manifest.
+     * @return The merged jar.
+     * @throws IOException If an input could not be read or the merged jar could not be written.
+     */
+    public static Path compact(Path directory, List<Path> inputs) throws IOException {
+        final var output = directory.resolve(fingerprint(inputs) + ".jar");
+
+        if (Files.isRegularFile(output)) {
+            Log.debug(LogCategory.GAME_PROVIDER, "Using compacted classpath %s", output);
+            return output;
+        }
+
+        Files.createDirectories(directory);
+        deleteStale(directory, output);
+
+        final var start = System.nanoTime();
+        final var tmp = Files.createTempFile(directory, "classpath", ".tmp");
+
+        try {
+            merge(tmp, inputs);
+            Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        Log.info(
+            LogCategory.GAME_PROVIDER,
+            "Compacted %d jars into %s in %d ms",
+            inputs.size(), output, (System.nanoTime() - start) / 1_000_000
+        );
+
+        return output;
+    }
+
+    /**
+     * Checks whether {@link #compact(Path, List)} can handle the given classpath entries, which must all be jars.
+     */
+    public static boolean canCompact(List<Path> inputs) {
+        return inputs.stream().allMatch(Files::isRegularFile);
+    }
+}
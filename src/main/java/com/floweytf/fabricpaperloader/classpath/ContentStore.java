@@ -0,0 +1,218 @@
+package com.floweytf.fabricpaperloader.classpath;
+
+import com.floweytf.fabricpaperloader.LoaderProperties;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A directory of files stored by their SHA-256, shared by every server on a host. Servers link their own copies of
+ * paper's jars (and other files that are the same everywhere) to the stored ones, so identical bytes exist once on
+ * disk and once in the page cache, however many servers use them.
+ * <p>
+ * Objects live in {@code objects/<first two hex digits>/<hash>} and are read-only once stored. They are added under a
+ * lock on {@code store.lock}, and published with an atomic move, so servers booting at the same time can populate the
+ * store safely. Links are hardlinks where possible, falling back to symlinks when the store is on another filesystem.
+ * Anything that writes files in place must {@link #detach} them first, or it would write through the link into the
+ * store, under every other server.
+ */
+public final class ContentStore {
+    private static final String OBJECTS_DIRECTORY = "objects";
+    private static final String LOCK_FILE = "store.lock";
+    // file locks are held per JVM, so threads of the same server must also exclude each other
+    private static final Object JVM_LOCK = new Object();
+
+    private final Path root;
+
+    @FunctionalInterface
+    private interface IOAction {
+        void run() throws IOException;
+    }
+
+    private ContentStore(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Opens the store configured by {@link LoaderProperties#STORE}.
+     *
+     * @return The store, or {@code null} if none is configured.
+     */
+    @Nullable
+    public static ContentStore fromProperties() {
+        final var property = System.getProperty(LoaderProperties.STORE);
+        return property == null ? null : new ContentStore(Paths.get(property).toAbsolutePath().normalize());
+    }
+
+    private Path getObject(String hash) {
+        final var normalized = hash.toLowerCase(Locale.ROOT);
+        return root.resolve(OBJECTS_DIRECTORY).resolve(normalized.substring(0, 2)).resolve(normalized);
+    }
+
+    private void locked(IOAction action) throws IOException {
+        synchronized (JVM_LOCK) {
+            Files.createDirectories(root);
+
+            try (
+                final var channel = FileChannel.open(
+                    root.resolve(LOCK_FILE),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE
+                );
+                final var ignored = channel.lock()
+            ) {
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * Replaces a file with a link to a stored object.
+     *
+     * @return Whether the file could be linked.
+     */
+    private static boolean link(Path object, Path file) throws IOException {
+        final var tmp = file.resolveSibling(file.getFileName() + ".link");
+        Files.deleteIfExists(tmp);
+
+        try {
+            Files.createLink(tmp, object);
+        } catch (IOException | UnsupportedOperationException e) {
+            try {
+                Files.createSymbolicLink(tmp, object);
+            } catch (IOException | UnsupportedOperationException e2) {
+                Log.debug(LogCategory.GAME_PROVIDER, "Cannot link %s to %s: %s", file, object, e2);
+                return false;
+            }
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Links files to stored objects, if the store has every one of them.
+     *
+     * @param files The files to create, mapped to their expected SHA-256.
+     * @return Whether every file was linked. If not, the files that were stay in place.
+     * @throws IOException If a file could not be created.
+     */
+    public boolean materialize(Map<Path, String> files) throws IOException {
+        for (final var hash : files.values()) {
+            if (!Files.isRegularFile(getObject(hash))) {
+                return false;
+            }
+        }
+
+        for (final var entry : files.entrySet()) {
+            final var file = entry.getKey();
+            Files.createDirectories(file.toAbsolutePath().getParent());
+
+            if (!link(getObject(entry.getValue()), file)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds a file to the store, if its contents are not stored yet, and replaces it with a link to the stored copy.
+     * The caller must have verified that the file matches its hash.
+     *
+     * @param file The file.
+     * @param hash The SHA-256 of the file.
+     * @return Whether the file now shares the stored copy.
+     * @throws IOException If the store could not be written.
+     */
+    public boolean intern(Path file, String hash) throws IOException {
+        final var object = getObject(hash);
+
+        if (!Files.exists(object)) {
+            locked(() -> {
+                // another server may have stored it while we waited for the lock
+                if (Files.exists(object)) {
+                    return;
+                }
+
+                Files.createDirectories(object.getParent());
+                final var tmp = object.resolveSibling(object.getFileName() + ".tmp");
+                Files.deleteIfExists(tmp);
+                Files.copy(file, tmp);
+
+                if (!tmp.toFile().setReadOnly()) {
+                    Log.debug(LogCategory.GAME_PROVIDER, "Could not make %s read-only", tmp);
+                }
+
+                Files.move(tmp, object, StandardCopyOption.ATOMIC_MOVE);
+            });
+        }
+
+        return Files.isSameFile(object, file) || link(object, file);
+    }
+
+    private static boolean isLinked(Path file) throws IOException {
+        if (Files.isSymbolicLink(file)) {
+            return true;
+        }
+
+        try {
+            return (Integer) Files.getAttribute(file, "unix:nlink") > 1;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // no link counts on this filesystem, but stored objects are still read-only
+            return !Files.isWritable(file);
+        }
+    }
+
+    /**
+     * Replaces files that may be linked to a stored object with private copies, so that writing to them cannot reach
+     * the store. Works without a store being configured, since one may have been earlier.
+     *
+     * @param files The files about to be written, which need not exist.
+     * @return The number of files that were replaced.
+     * @throws IOException If a file could not be replaced.
+     */
+    public static int detach(Collection<Path> files) throws IOException {
+        var detached = 0;
+
+        for (final var file : files) {
+            if (!Files.exists(file, LinkOption.NOFOLLOW_LINKS) || !isLinked(file)) {
+                continue;
+            }
+
+            final var tmp = file.resolveSibling(file.getFileName() + ".detach");
+            Files.deleteIfExists(tmp);
+
+            // a symlink to a missing object is simply dropped, so the writer recreates it
+            if (Files.exists(file)) {
+                Files.copy(file, tmp);
+
+                // the copy keeps the stored object's read-only mode
+                if (!tmp.toFile().setWritable(true, true)) {
+                    throw new IOException("Could not make " + tmp + " writable");
+                }
+
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.delete(file);
+            }
+
+            detached++;
+        }
+
+        return detached;
+    }
+}
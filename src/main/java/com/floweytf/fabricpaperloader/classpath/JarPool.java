@@ -0,0 +1,81 @@
+package com.floweytf.fabricpaperloader.classpath;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Shares {@link MappedJar}s between everything that reads the same jar, so that each jar is opened and its central
+ * directory parsed only once per launch.
+ */
+public class JarPool implements Closeable {
+    private final Map<Path, MappedJar> jars = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the jar at a path, opening it if this is the first time it is asked for.
+     *
+     * @param path The jar.
+     * @return The shared jar, which must not be closed by the caller.
+     * @throws IOException If the jar could not be opened.
+     */
+    public MappedJar get(Path path) throws IOException {
+        try {
+            return jars.computeIfAbsent(path.toAbsolutePath().normalize(), key -> {
+                try {
+                    return MappedJar.open(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Closes and forgets every jar that is not among the given ones.
+     *
+     * @param retained The jars that are still in use.
+     */
+    public void retain(Collection<Path> retained) {
+        final var keep = retained.stream().map(path -> path.toAbsolutePath().normalize()).collect(Collectors.toSet());
+        final var iterator = jars.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            final var entry = iterator.next();
+
+            if (keep.contains(entry.getKey())) {
+                continue;
+            }
+
+            iterator.remove();
+
+            try {
+                entry.getValue().close();
+            } catch (IOException e) {
+                Log.warn(LogCategory.GAME_PROVIDER, "Failed to close " + entry.getKey(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (final var jar : jars.values()) {
+            try {
+                jar.close();
+            } catch (IOException e) {
+                Log.warn(LogCategory.GAME_PROVIDER, "Failed to close " + jar.getPath(), e);
+            }
+        }
+
+        jars.clear();
+    }
+}
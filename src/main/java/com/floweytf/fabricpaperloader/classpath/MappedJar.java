@@ -0,0 +1,362 @@
+package com.floweytf.fabricpaperloader.classpath;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Read-only access to a jar through a memory mapping. The central directory is parsed once up front; STORED entries
+ * are then read straight out of the mapping and DEFLATED entries are inflated from it, without going through any
+ * streams. The file channel is closed as soon as the jar is mapped, so an open jar holds no file descriptor.
+ * <p>
+ * Jars this does not understand (Zip64, larger than 2GiB, or otherwise malformed) fall back to {@link JarFile}.
+ * Multi-release jars are resolved for the running Java version, like Knot's own class loader does.
+ */
+public final class MappedJar implements Closeable {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final String VERSIONS = "META-INF/versions/";
+
+    /**
+     * A central directory entry.
+     *
+     * @param method         The compression method.
+     * @param flags          The general purpose flags.
+     * @param compressedSize The size of the data in the jar.
+     * @param size           The size of the data once inflated.
+     * @param localHeader    The offset of the entry's local header in the mapping.
+     */
+    private record Entry(int method, int flags, int compressedSize, int size, int localHeader) {
+    }
+
+    private final Path path;
+    @Nullable
+    private final ByteBuffer buffer;
+    @Nullable
+    private final Map<String, Entry> entries;
+    @Nullable
+    private final JarFile fallback;
+    private final Map<String, String> versioned;
+
+    private MappedJar(Path path, ByteBuffer buffer, Map<String, Entry> entries) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        this.entries = entries;
+        this.fallback = null;
+        this.versioned = findVersionedEntries();
+    }
+
+    private MappedJar(Path path, JarFile fallback) {
+        this.path = path;
+        this.buffer = null;
+        this.entries = null;
+        this.fallback = fallback;
+        this.versioned = Map.of();
+    }
+
+    /**
+     * Opens a jar. Prefer {@link JarPool#get(Path)}, which shares jars between users.
+     *
+     * @param path The jar.
+     * @return The opened jar.
+     * @throws IOException If the jar could not be read.
+     */
+    public static MappedJar open(Path path) throws IOException {
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final var size = channel.size();
+
+            if (size <= Integer.MAX_VALUE) {
+                final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+                Map<String, Entry> entries;
+
+                try {
+                    entries = parse(buffer);
+                } catch (IndexOutOfBoundsException e) {
+                    entries = null;
+                }
+
+                if (entries != null) {
+                    return new MappedJar(path, buffer, entries);
+                }
+            }
+        }
+
+        Log.debug(LogCategory.GAME_PROVIDER, "Falling back to JarFile for %s", path);
+        return new MappedJar(path, new JarFile(path.toFile(), false, ZipFile.OPEN_READ, Runtime.version()));
+    }
+
+    private static int u16(ByteBuffer buffer, int index) {
+        return Short.toUnsignedInt(buffer.getShort(index));
+    }
+
+    private static long u32(ByteBuffer buffer, int index) {
+        return Integer.toUnsignedLong(buffer.getInt(index));
+    }
+
+    /**
+     * Parses the central directory.
+     *
+     * @return The entries, or {@code null} if the jar is in a format we do not handle.
+     */
+    @Nullable
+    private static Map<String, Entry> parse(ByteBuffer buffer) {
+        final var limit = buffer.limit();
+        var end = -1;
+
+        // the end header is followed by a comment of at most 64KiB
+        for (int i = limit - END_HEADER_SIZE; i >= Math.max(0, limit - END_HEADER_SIZE - 0xFFFF); i--) {
+            if (buffer.getInt(i) == END_HEADER) {
+                end = i;
+                break;
+            }
+        }
+
+        if (end == -1 || (end >= 20 && buffer.getInt(end - 20) == ZIP64_LOCATOR)) {
+            return null;
+        }
+
+        final var count = u16(buffer, end + 10);
+        final var directorySize = u32(buffer, end + 12);
+        final var directoryOffset = u32(buffer, end + 16);
+        // anything prepended to the archive (e.g. a launcher script) shifts every offset
+        final var base = end - directorySize - directoryOffset;
+
+        if (count == 0xFFFF || directoryOffset == 0xFFFFFFFFL || base < 0) {
+            return null;
+        }
+
+        final var entries = new HashMap<String, Entry>(count * 4 / 3 + 1);
+        var position = (int) (base + directoryOffset);
+        final var nameBytes = new byte[0xFFFF];
+
+        for (int i = 0; i < count; i++) {
+            if (position + CENTRAL_HEADER_SIZE > end || buffer.getInt(position) != CENTRAL_HEADER) {
+                return null;
+            }
+
+            final var compressedSize = u32(buffer, position + 20);
+            final var size = u32(buffer, position + 24);
+            final var nameLength = u16(buffer, position + 28);
+            final var localHeader = u32(buffer, position + 42);
+
+            if (compressedSize > Integer.MAX_VALUE || size > Integer.MAX_VALUE || base + localHeader > end) {
+                return null;
+            }
+
+            buffer.get(position + CENTRAL_HEADER_SIZE, nameBytes, 0, nameLength);
+            final var name = new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+
+            entries.putIfAbsent(name, new Entry(
+                u16(buffer, position + 10),
+                u16(buffer, position + 8),
+                (int) compressedSize,
+                (int) size,
+                (int) (base + localHeader)
+            ));
+
+            position += CENTRAL_HEADER_SIZE + nameLength + u16(buffer, position + 30) + u16(buffer, position + 32);
+        }
+
+        return entries;
+    }
+
+    /**
+     * Maps base entry names to the entry that should be read in their place on this Java version.
+     */
+    private Map<String, String> findVersionedEntries() throws IOException {
+        final var manifest = readEntry(JarFile.MANIFEST_NAME);
+
+        if (manifest == null) {
+            return Map.of();
+        }
+
+        final var isMultiRelease = new Manifest(new ByteArrayInputStream(manifest)).getMainAttributes()
+            .getValue(Attributes.Name.MULTI_RELEASE);
+
+        if (!"true".equalsIgnoreCase(isMultiRelease)) {
+            return Map.of();
+        }
+
+        final var feature = Runtime.version().feature();
+        final var versions = new HashMap<String, Integer>();
+        final var versioned = new HashMap<String, String>();
+
+        for (final var name : entries.keySet()) {
+            if (!name.startsWith(VERSIONS)) {
+                continue;
+            }
+
+            final var slash = name.indexOf('/', VERSIONS.length());
+
+            if (slash == -1) {
+                continue;
+            }
+
+            final int version;
+
+            try {
+                version = Integer.parseInt(name.substring(VERSIONS.length(), slash));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            final var base = name.substring(slash + 1);
+
+            if (version >= 9 && version <= feature && version > versions.getOrDefault(base, 0)) {
+                versions.put(base, version);
+                versioned.put(base, name);
+            }
+        }
+
+        return versioned;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the names of every entry, as stored in the jar.
+     */
+    public Set<String> getNames() {
+        if (entries != null) {
+            return Collections.unmodifiableSet(entries.keySet());
+        }
+
+        return fallback.stream().map(ZipEntry::getName).collect(Collectors.toUnmodifiableSet());
+    }
+
+    public boolean contains(String name) {
+        if (entries != null) {
+            return entries.containsKey(name);
+        }
+
+        return fallback.getJarEntry(name) != null;
+    }
+
+    /**
+     * Reads an entry, resolving multi-release jars.
+     *
+     * @param name The name of the entry.
+     * @return The contents of the entry, or {@code null} if it does not exist.
+     * @throws IOException If the entry could not be read.
+     */
+    @Nullable
+    public byte[] read(String name) throws IOException {
+        if (entries == null) {
+            final var entry = fallback.getJarEntry(name);
+
+            if (entry == null) {
+                return null;
+            }
+
+            try (final var in = fallback.getInputStream(entry)) {
+                return in.readAllBytes();
+            }
+        }
+
+        return readEntry(versioned.getOrDefault(name, name));
+    }
+
+    @Nullable
+    private byte[] readEntry(String name) throws IOException {
+        final var entry = entries.get(name);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if ((entry.flags() & 1) != 0) {
+            throw new ZipException("Encrypted entry " + name + " in " + path);
+        }
+
+        final var header = entry.localHeader();
+
+        if (buffer.getInt(header) != LOCAL_HEADER) {
+            throw new ZipException("Invalid local header for " + name + " in " + path);
+        }
+
+        final var data = header + LOCAL_HEADER_SIZE + u16(buffer, header + 26) + u16(buffer, header + 28);
+
+        if ((long) data + entry.compressedSize() > buffer.limit()) {
+            throw new ZipException("Truncated entry " + name + " in " + path);
+        }
+
+        final var bytes = new byte[entry.size()];
+
+        switch (entry.method()) {
+            case ZipEntry.STORED -> buffer.get(data, bytes);
+            case ZipEntry.DEFLATED -> inflate(name, buffer.slice(data, entry.compressedSize()), bytes);
+            default -> throw new ZipException(
+                "Unsupported compression method " + entry.method() + " for " + name + " in " + path
+            );
+        }
+
+        return bytes;
+    }
+
+    private void inflate(String name, ByteBuffer input, byte[] output) throws ZipException {
+        final var inflater = new Inflater(true);
+
+        try {
+            inflater.setInput(input);
+            var length = 0;
+
+            while (length < output.length && !inflater.finished()) {
+                final var read = inflater.inflate(output, length, output.length - length);
+
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+
+                length += read;
+            }
+
+            if (length != output.length) {
+                throw new ZipException("Corrupt entry " + name + " in " + path);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Corrupt entry " + name + " in " + path + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Releases the jar. A mapped jar is unmapped once it becomes unreachable, so this only matters for the fallback.
+     */
+    @Override
+    public void close() throws IOException {
+        if (fallback != null) {
+            fallback.close();
+        }
+    }
+}
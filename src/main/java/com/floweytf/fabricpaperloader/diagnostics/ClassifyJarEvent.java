@@ -0,0 +1,25 @@
+package com.floweytf.fabricpaperloader.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering the classification of a single jar or directory.
+ */
+@Name("com.floweytf.fabricpaperloader.ClassifyJar")
+@Label("Classify Jar")
+@Category("Fabric Paper Loader")
+@Description("Classification of a single classpath entry")
+public final class ClassifyJarEvent extends jdk.jfr.Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Category")
+    public String category;
+
+    @Label("Cached")
+    @Description("Whether the result came from the classification cache")
+    public boolean cached;
+}
@@ -0,0 +1,190 @@
+package com.floweytf.fabricpaperloader.diagnostics;
+
+import com.floweytf.fabricpaperloader.transform.TransformStage;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Live counters for class loading and transformation, exposed over JMX. Classes keep being loaded and mixed into
+ * long after startup, usually in the middle of a tick, and these counters make that visible.
+ * <p>
+ * Loading a class often loads others while it is being transformed (mixin reads the class hierarchy, for instance).
+ * Each thread keeps a stack of the classes it is transforming so that time spent on a nested class is only counted
+ * against that class, while slow loads are reported with the total time of the outermost class.
+ */
+public class LoaderMetrics implements LoaderMetricsMBean {
+    public static final String OBJECT_NAME = "com.floweytf.fabricpaperloader:type=LoaderMetrics";
+    private static final String SERVER_THREAD = "Server thread";
+    private static final int MAX_SLOW_LOADS = 100;
+    private static final int MAX_STACK_DEPTH = 64;
+
+    /**
+     * A class being transformed on the current thread.
+     */
+    private static final class Frame {
+        private final Frame parent;
+        /**
+         * The time spent transforming classes loaded while transforming this one.
+         */
+        private long nested;
+
+        private Frame(Frame parent) {
+            this.parent = parent;
+        }
+    }
+
+    private final ThreadLocal<Frame> frames = new ThreadLocal<>();
+    private final LongAdder classesDefined = new LongAdder();
+    private final LongAdder transformCount = new LongAdder();
+    private final LongAdder transformNanos = new LongAdder();
+    private final LongAdder mixinNanos = new LongAdder();
+    private final LongAdder slowLoadCount = new LongAdder();
+    private final Deque<String> slowLoads = new ArrayDeque<>();
+    private final long slowLoadMillis;
+
+    /**
+     * @param slowLoadMillis How long a class load on the server thread may take before it is recorded.
+     */
+    public LoaderMetrics(long slowLoadMillis) {
+        this.slowLoadMillis = slowLoadMillis;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to register loader metrics", e);
+        }
+    }
+
+    /**
+     * Gets the stage that counts and times classes, which must run outside every other stage.
+     */
+    public TransformStage classStage() {
+        return this::transformClass;
+    }
+
+    /**
+     * Gets the stage that times mixin, which must run inside every other stage.
+     */
+    public TransformStage mixinStage() {
+        return this::transformMixin;
+    }
+
+    private byte[] transformClass(String name, byte[] bytes, UnaryOperator<byte[]> next) {
+        final var parent = frames.get();
+        final var frame = new Frame(parent);
+        frames.set(frame);
+
+        final var start = System.nanoTime();
+        byte[] result = null;
+
+        try {
+            result = next.apply(bytes);
+            return result;
+        } finally {
+            final var elapsed = System.nanoTime() - start;
+            frames.set(parent);
+
+            classesDefined.increment();
+            transformNanos.add(elapsed - frame.nested);
+
+            if (result != null && result != bytes) {
+                transformCount.increment();
+            }
+
+            if (parent != null) {
+                parent.nested += elapsed;
+            } else if (elapsed > TimeUnit.MILLISECONDS.toNanos(slowLoadMillis) &&
+                Thread.currentThread().getName().equals(SERVER_THREAD)) {
+                recordSlowLoad(name, elapsed);
+            }
+        }
+    }
+
+    private byte[] transformMixin(String name, byte[] bytes, UnaryOperator<byte[]> next) {
+        final var frame = frames.get();
+        final var nestedBefore = frame == null ? 0 : frame.nested;
+        final var start = System.nanoTime();
+
+        try {
+            return next.apply(bytes);
+        } finally {
+            final var nested = frame == null ? 0 : frame.nested - nestedBefore;
+            mixinNanos.add(System.nanoTime() - start - nested);
+        }
+    }
+
+    private void recordSlowLoad(String name, long nanos) {
+        final var millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        // the frames of the loader itself only show how the class got to the transformer
+        final var stack = Arrays.stream(Thread.currentThread().getStackTrace())
+            .dropWhile(element -> !element.getClassName().startsWith("net.fabricmc.loader.impl.launch.knot."))
+            .limit(MAX_STACK_DEPTH)
+            .map(element -> "\tat " + element)
+            .collect(Collectors.joining("\n"));
+
+        Log.debug(LogCategory.GAME_PROVIDER, "Loading %s on the server thread took %d ms", name, millis);
+        slowLoadCount.increment();
+
+        synchronized (slowLoads) {
+            slowLoads.addLast("%s took %d ms\n%s".formatted(name, millis, stack));
+
+            if (slowLoads.size() > MAX_SLOW_LOADS) {
+                slowLoads.removeFirst();
+            }
+        }
+    }
+
+    @Override
+    public long getClassesDefined() {
+        return classesDefined.sum();
+    }
+
+    @Override
+    public long getTransformCount() {
+        return transformCount.sum();
+    }
+
+    @Override
+    public long getTransformTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(transformNanos.sum());
+    }
+
+    @Override
+    public long getMixinTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mixinNanos.sum());
+    }
+
+    @Override
+    public long getSlowLoadThresholdMillis() {
+        return slowLoadMillis;
+    }
+
+    @Override
+    public long getSlowLoadCount() {
+        return slowLoadCount.sum();
+    }
+
+    @Override
+    public String[] getSlowLoads() {
+        synchronized (slowLoads) {
+            return slowLoads.toArray(String[]::new);
+        }
+    }
+}
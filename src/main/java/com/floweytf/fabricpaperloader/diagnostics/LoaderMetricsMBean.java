@@ -0,0 +1,38 @@
+package com.floweytf.fabricpaperloader.diagnostics;
+
+/**
+ * The JMX view of {@link LoaderMetrics}, registered as {@value LoaderMetrics#OBJECT_NAME}.
+ */
+public interface LoaderMetricsMBean {
+    /**
+     * The number of classes Knot has defined through the transformer pipeline.
+     */
+    long getClassesDefined();
+
+    /**
+     * The number of those classes whose bytes the pipeline changed.
+     */
+    long getTransformCount();
+
+    /**
+     * The time spent in the transformer pipeline, including mixin, excluding classes loaded while transforming.
+     */
+    long getTransformTimeMillis();
+
+    /**
+     * The part of {@link #getTransformTimeMillis()} spent in mixin itself.
+     */
+    long getMixinTimeMillis();
+
+    long getSlowLoadThresholdMillis();
+
+    /**
+     * The number of class loads on the server thread that took longer than the threshold.
+     */
+    long getSlowLoadCount();
+
+    /**
+     * The most recent slow class loads on the server thread, each with the stack that triggered it.
+     */
+    String[] getSlowLoads();
+}
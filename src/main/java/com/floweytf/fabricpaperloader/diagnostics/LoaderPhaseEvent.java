@@ -0,0 +1,18 @@
+package com.floweytf.fabricpaperloader.diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event covering one phase of the loader's startup, such as running paperclip or locating entrypoints.
+ */
+@Name("com.floweytf.fabricpaperloader.LoaderPhase")
+@Label("Loader Phase")
+@Category("Fabric Paper Loader")
+@Description("A phase of the loader's startup")
+public final class LoaderPhaseEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    public String phase;
+}
@@ -0,0 +1,45 @@
+package com.floweytf.fabricpaperloader.diagnostics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
+
+/**
+ * The heap and metaspace in use at some point, taken after a full collection so that two snapshots can be compared.
+ *
+ * @param heapUsed      The bytes of heap in use.
+ * @param metaspaceUsed The bytes of metaspace in use, or {@code 0} if the JVM does not report it.
+ */
+public record MemorySnapshot(long heapUsed, long metaspaceUsed) {
+    /**
+     * Runs a full collection and takes a snapshot. This pauses the JVM, so it should only be done rarely.
+     *
+     * @return The snapshot.
+     */
+    public static MemorySnapshot capture() {
+        System.gc();
+
+        final var metaspace = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.NON_HEAP && pool.getName().equals("Metaspace"))
+            .mapToLong(pool -> pool.getUsage().getUsed())
+            .sum();
+
+        return new MemorySnapshot(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), metaspace);
+    }
+
+    private static String mib(long bytes) {
+        return "%.1f MiB".formatted(bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * Describes how much was reclaimed between an earlier snapshot and this one.
+     *
+     * @param before The earlier snapshot.
+     * @return A human-readable summary.
+     */
+    public String describeReclaimed(MemorySnapshot before) {
+        return "%s of heap (%s -> %s) and %s of metaspace (%s -> %s)".formatted(
+            mib(before.heapUsed() - heapUsed), mib(before.heapUsed()), mib(heapUsed),
+            mib(before.metaspaceUsed() - metaspaceUsed), mib(before.metaspaceUsed()), mib(metaspaceUsed)
+        );
+    }
+}
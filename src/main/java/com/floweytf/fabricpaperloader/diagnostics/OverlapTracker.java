@@ -0,0 +1,69 @@
+package com.floweytf.fabricpaperloader.diagnostics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Measures how much wall-clock time running stages concurrently saves: the difference between the total time of the
+ * stages, as if they had run one after the other, and the time from the tracker's creation to {@link #report}.
+ */
+public final class OverlapTracker {
+    private final String name;
+    private final long start = System.nanoTime();
+    private final LongAdder work = new LongAdder();
+
+    /**
+     * @param name What the stages make up, for logging.
+     */
+    public OverlapTracker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Wraps a stage so that its time is counted.
+     *
+     * @param stage The stage.
+     * @return The wrapped stage, to run on any thread.
+     */
+    public <T> Supplier<T> track(Supplier<T> stage) {
+        return () -> {
+            final var stageStart = System.nanoTime();
+
+            try {
+                return stage.get();
+            } finally {
+                work.add(System.nanoTime() - stageStart);
+            }
+        };
+    }
+
+    /**
+     * Counts the time from now until a stage that is already running completes.
+     *
+     * @param stage The stage.
+     * @return A future completing like {@code stage}, but only once its time has been counted. Wait on this rather
+     * than on {@code stage}, so that {@link #report} sees the time.
+     */
+    public <T> CompletableFuture<T> track(CompletableFuture<T> stage) {
+        final var stageStart = System.nanoTime();
+        return stage.whenComplete((result, error) -> work.add(System.nanoTime() - stageStart));
+    }
+
+    /**
+     * Logs the time saved, once every stage has finished.
+     */
+    public void report() {
+        final var wall = (System.nanoTime() - start) / 1_000_000;
+        final var total = work.sum() / 1_000_000;
+
+        Log.info(
+            LogCategory.GAME_PROVIDER,
+            "%s took %d ms, running its stages concurrently saved %d ms of %d ms",
+            name, wall, Math.max(0, total - wall), total
+        );
+    }
+}
@@ -0,0 +1,98 @@
+package com.floweytf.fabricpaperloader.diagnostics;
+
+import com.floweytf.fabricpaperloader.LoaderProperties;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Records the loader's startup phases, both as {@link LoaderPhaseEvent}s for JFR and as a plain-text timeline that is
+ * printed at launch when {@link LoaderProperties#TIMELINE} is set.
+ */
+public final class StartupTimeline {
+    private record Span(String name, String thread, long start, long end) {
+    }
+
+    /**
+     * Pairs a {@link System#nanoTime()} reading with the JVM's uptime so that spans can be shown relative to JVM start.
+     */
+    private static final long ORIGIN = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(
+        ManagementFactory.getRuntimeMXBean().getUptime()
+    );
+
+    private static final List<Span> SPANS = new ArrayList<>();
+
+    private StartupTimeline() {
+    }
+
+    /**
+     * A running phase, ended by {@link #close()}.
+     */
+    public static final class Phase implements AutoCloseable {
+        private final String name;
+        private final LoaderPhaseEvent event = new LoaderPhaseEvent();
+        private final long start = System.nanoTime();
+
+        private Phase(String name) {
+            this.name = name;
+            event.phase = name;
+            event.begin();
+        }
+
+        @Override
+        public void close() {
+            event.commit();
+
+            synchronized (SPANS) {
+                SPANS.add(new Span(name, Thread.currentThread().getName(), start, System.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * Starts a phase, use with try-with-resources.
+     *
+     * @param name The name of the phase.
+     * @return The running phase.
+     */
+    public static Phase phase(String name) {
+        return new Phase(name);
+    }
+
+    private static String millis(long nanos) {
+        return "%8.1fms".formatted(nanos / 1_000_000.0);
+    }
+
+    /**
+     * Prints the recorded phases if the timeline has been requested.
+     */
+    public static void print() {
+        if (!Boolean.getBoolean(LoaderProperties.TIMELINE)) {
+            return;
+        }
+
+        final List<Span> spans;
+
+        synchronized (SPANS) {
+            spans = SPANS.stream().sorted(Comparator.comparingLong(Span::start)).toList();
+        }
+
+        final var builder = new StringBuilder("Startup timeline (offset from JVM start, duration, phase, thread):");
+
+        for (var span : spans) {
+            builder.append("\n  ")
+                .append(millis(span.start() - ORIGIN)).append(' ')
+                .append(millis(span.end() - span.start())).append("  ")
+                .append(span.name()).append(" [").append(span.thread()).append(']');
+        }
+
+        builder.append("\n  ").append(millis(System.nanoTime() - ORIGIN)).append("  launch");
+        Log.info(LogCategory.GAME_PROVIDER, "%s", builder);
+    }
+}
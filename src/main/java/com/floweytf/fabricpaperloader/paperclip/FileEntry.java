@@ -0,0 +1,44 @@
+package com.floweytf.fabricpaperloader.paperclip;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A line of paperclip's {@code versions.list} or {@code libraries.list}.
+ *
+ * @param hash The SHA-256 hash of the file, in hex.
+ * @param id   The id of the file, like a maven coordinate.
+ * @param path The path of the file, relative to {@code versions/} or {@code libraries/}.
+ */
+public record FileEntry(String hash, String id, String path) {
+    /**
+     * Parses a list file.
+     *
+     * @param reader The list contents.
+     * @return The entries, in order.
+     * @throws IOException              If the list could not be read.
+     * @throws IllegalArgumentException If a line is not in the expected format.
+     */
+    public static List<FileEntry> parse(BufferedReader reader) throws IOException {
+        final var entries = new ArrayList<FileEntry>();
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+
+            final var parts = line.split("\t");
+
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Unrecognized list entry: " + line);
+            }
+
+            entries.add(new FileEntry(parts[0], parts[1], parts[2]));
+        }
+
+        return entries;
+    }
+}
@@ -0,0 +1,215 @@
+package com.floweytf.fabricpaperloader.paperclip;
+
+import com.floweytf.fabricpaperloader.classpath.ContentStore;
+import com.floweytf.fabricpaperloader.diagnostics.StartupTimeline;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import net.fabricmc.loader.impl.FormattedException;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Checks the files paperclip produced against the hashes declared in its {@code versions.list} and
+ * {@code libraries.list}. Files are hashed in parallel, and files whose size and mtime still match the
+ * {@link PatchCache} are trusted without being hashed again.
+ */
+public class LibraryVerifier {
+    /**
+     * The outcome of checking a single file.
+     *
+     * @param path     The file.
+     * @param expected The hash declared by paperclip.
+     * @param entry    The state of the file, or {@code null} if it could not be read.
+     * @param error    Why the file could not be read, if it could not.
+     * @param hashed   Whether the file had to be hashed, rather than being trusted from the cache.
+     */
+    private record Check(
+        Path path,
+        String expected,
+        @Nullable PatchCache.Entry entry,
+        @Nullable IOException error,
+        boolean hashed
+    ) {
+        boolean isValid() {
+            return entry != null && entry.hash().equalsIgnoreCase(expected);
+        }
+
+        String describe() {
+            if (error instanceof NoSuchFileException) {
+                return "* %s: missing (expected %s)".formatted(path, expected);
+            }
+
+            if (entry == null) {
+                return "* %s: unreadable (%s)".formatted(path, error);
+            }
+
+            return "* %s: expected %s, got %s (%d bytes)".formatted(path, expected, entry.hash(), entry.size());
+        }
+    }
+
+    static Map<Path, String> expectedHashes(VersionInfo version) {
+        final var expected = new LinkedHashMap<>(Objects.requireNonNull(version.libraryHashes()));
+        expected.put(Objects.requireNonNull(version.serverJarPath()), Objects.requireNonNull(version.hash()));
+        return expected;
+    }
+
+    private static Check check(Path path, String expected, @Nullable PatchCache.Entry previous) {
+        if (previous != null && previous.hash().equalsIgnoreCase(expected) && previous.isUnchanged()) {
+            return new Check(path, expected, previous, null, false);
+        }
+
+        try {
+            return new Check(path, expected, PatchCache.Entry.capture(path), null, true);
+        } catch (IOException e) {
+            return new Check(path, expected, null, e, true);
+        }
+    }
+
+    /**
+     * Starts verifying the output of paperclip in the background. Once every file has been checked, the
+     * {@link PatchCache} is rewritten so that the next boot only needs to compare sizes and mtimes.
+     *
+     * @param version   The version paperclip was run for.
+     * @param cacheFile The patch cache file.
+     * @return A future that completes once every file is verified, or completes exceptionally with a
+     * {@link FormattedException} describing every file that did not match.
+     */
+    public static CompletableFuture<Void> verifyAsync(VersionInfo version, Path cacheFile) {
+        final var expected = expectedHashes(version);
+        final Map<Path, PatchCache.Entry> previous = PatchCache.read(cacheFile)
+            .filter(cache -> Objects.equals(cache.paperclipHash(), version.hash()))
+            .map(cache -> cache.entries().stream().collect(
+                Collectors.toMap(PatchCache.Entry::path, Function.identity(), (a, b) -> b)
+            ))
+            .orElse(Map.of());
+
+        final var checks = expected.entrySet().stream()
+            .map(entry -> CompletableFuture.supplyAsync(
+                () -> check(entry.getKey(), entry.getValue(), previous.get(entry.getKey()))
+            ))
+            .toList();
+
+        return CompletableFuture.allOf(checks.toArray(CompletableFuture[]::new))
+            .thenAccept(ignored -> complete(version, cacheFile, checks.stream().map(CompletableFuture::join).toList()));
+    }
+
+    private static void complete(VersionInfo version, Path cacheFile, List<Check> checks) {
+        final var failed = checks.stream().filter(check -> !check.isValid()).toList();
+        final var hashed = checks.stream().filter(Check::hashed).count();
+
+        if (failed.isEmpty()) {
+            Log.debug(
+                LogCategory.GAME_PROVIDER,
+                "Verified %d paper libraries (%d hashed, %d unchanged)",
+                checks.size(), hashed, checks.size() - hashed
+            );
+
+            final var entries = checks.stream().map(Check::entry).toList();
+            final var store = ContentStore.fromProperties();
+            final var stored = store == null ? entries : intern(store, entries);
+
+            // linking gives a file the mtime of the stored copy, which the cache has to record
+            if (hashed != 0 || !stored.equals(entries)) {
+                try {
+                    new PatchCache(version.hash(), stored).write(cacheFile);
+                } catch (IOException e) {
+                    // Not fatal, we will just run paperclip again next time
+                    Log.warn(LogCategory.GAME_PROVIDER, "Failed to write patch cache", e);
+                }
+            }
+
+            return;
+        }
+
+        // make sure paperclip runs again next boot, which re-extracts anything that is broken
+        try {
+            Files.deleteIfExists(cacheFile);
+        } catch (IOException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to delete patch cache", e);
+        }
+
+        final var details = failed.stream().map(Check::describe).collect(Collectors.joining("\n"));
+
+        Log.error(
+            LogCategory.GAME_PROVIDER,
+            "%d of %d paper libraries failed verification:\n%s",
+            failed.size(), checks.size(), details
+        );
+
+        throw new FormattedException(
+            "Paper libraries are corrupt",
+            "The following files do not match the hashes declared by paperclip:\n%s\n\n" +
+                "Delete them and restart the server to have paperclip extract them again.",
+            details
+        );
+    }
+
+    /**
+     * Replaces verified files with links to their copies in the store, adding any the store does not have yet.
+     * Failures are logged, since a file that is not shared still works.
+     *
+     * @return The entries, updated for the files that were linked.
+     */
+    private static List<PatchCache.Entry> intern(ContentStore store, List<PatchCache.Entry> entries) {
+        final var start = System.nanoTime();
+        final var stored = new ArrayList<PatchCache.Entry>(entries.size());
+        var shared = 0;
+
+        for (final var entry : entries) {
+            try {
+                if (store.intern(entry.path(), entry.hash())) {
+                    shared++;
+                }
+
+                stored.add(new PatchCache.Entry(
+                    entry.path(),
+                    Files.size(entry.path()),
+                    Files.getLastModifiedTime(entry.path()).toMillis(),
+                    entry.hash()
+                ));
+            } catch (IOException e) {
+                Log.warn(LogCategory.GAME_PROVIDER, "Failed to store " + entry.path(), e);
+                stored.add(entry);
+            }
+        }
+
+        Log.debug(
+            LogCategory.GAME_PROVIDER,
+            "Shared %d of %d paper libraries through the store in %d ms",
+            shared, entries.size(), (System.nanoTime() - start) / 1_000_000
+        );
+
+        return stored;
+    }
+
+    /**
+     * Waits for a verification started by {@link #verifyAsync(VersionInfo, Path)}.
+     *
+     * @param verification The pending verification.
+     * @throws FormattedException If any file did not match its expected hash.
+     */
+    public static void join(CompletableFuture<Void> verification) {
+        try (var ignored = StartupTimeline.phase("verify paper libraries")) {
+            verification.join();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof FormattedException cause) {
+                throw cause;
+            }
+
+            throw new FormattedException("Failed to verify paper libraries", e.getCause() == null ? e : e.getCause());
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package com.floweytf.fabricpaperloader.paperclip;
 
+import com.floweytf.fabricpaperloader.LoaderProperties;
+import com.floweytf.fabricpaperloader.classpath.ContentStore;
+import com.floweytf.fabricpaperloader.classpath.JarPool;
+import com.floweytf.fabricpaperloader.classpath.MappedJar;
+import com.floweytf.fabricpaperloader.diagnostics.StartupTimeline;
 import com.floweytf.fabricpaperloader.util.ReroutingCL;
 import com.floweytf.fabricpaperloader.util.Utils;
 
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Scanner;
@@ -19,17 +28,21 @@ import net.fabricmc.loader.impl.game.GameProviderHelper;
 import net.fabricmc.loader.impl.util.SystemProperties;
 import net.fabricmc.loader.impl.util.log.Log;
 import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.VisibleForTesting;
 
 /**
  * A utility class for containing annoying procedural logic required for running paperclip.
  */
 public class PaperclipRunner {
+    // left in the cache directory once a store has been used, since files may stay linked after it is unconfigured
+    private static final String STORE_MARKER = "store-used";
+
     /**
-     * Finds paperclip with Fabric's tools.
+     * Lists the locations paperclip is looked for in, in order of preference.
      *
-     * @return Paperclip search result, or empty.
+     * @return The absolute locations, whether they exist or not.
      */
-    private static Optional<GameProviderHelper.FindResult> findPaperclip() {
+    public static List<Path> getPaperclipCandidates() {
         final var paperLocations = new ArrayList<String>();
 
         if (System.getProperty(SystemProperties.GAME_JAR_PATH) != null) {
@@ -40,9 +53,17 @@ public class PaperclipRunner {
         paperLocations.add("./paperclip.jar");
         paperLocations.add("./paper.jar");
 
-        final var existingPaperLocations = paperLocations.stream()
-            .map(p -> Paths.get(p).toAbsolutePath().normalize())
-            .filter(Files::exists).toList();
+        return paperLocations.stream().map(p -> Paths.get(p).toAbsolutePath().normalize()).toList();
+    }
+
+    /**
+     * Finds paperclip with Fabric's tools.
+     *
+     * @return Paperclip search result, or empty.
+     */
+    private static Optional<GameProviderHelper.FindResult> findPaperclip() {
+        final var paperLocations = getPaperclipCandidates();
+        final var existingPaperLocations = paperLocations.stream().filter(Files::exists).toList();
 
         // Find the "correct" paper jar
         final var result = GameProviderHelper.findFirst(
@@ -57,7 +78,7 @@ public class PaperclipRunner {
                 LogCategory.GAME_PROVIDER,
                 "Could not locate paperclip - searched in:\n%s",
                 paperLocations.stream()
-                    .map(p -> (String.format("* %s", Paths.get(p).toAbsolutePath().normalize())))
+                    .map(p -> String.format("* %s", p))
                     .collect(Collectors.joining("\n"))
             );
 
@@ -75,7 +96,7 @@ public class PaperclipRunner {
      * @throws Exception On internal reflection errors.
      */
     private static int invokePaperclip(ClassLoader parent) throws Exception {
-        try {
+        try (var ignored = StartupTimeline.phase("invokePaperclip")) {
             final var cl = new ReroutingCL(parent, name -> name.startsWith("io.papermc"))
                 .rerouteS(System.class, "exit", PaperclipRunner.class, "handleExit", void.class, int.class)
                 .rerouteS(Boolean.class, "getBoolean", PaperclipRunner.class, "handleGetBoolean", boolean.class,
@@ -100,67 +121,214 @@ public class PaperclipRunner {
     }
 
     /**
-     * Launches paperclip to generate library directories and a patched minecraft jar.
+     * Launches paperclip to generate library directories and a patched minecraft jar. If the patch cache shows that
+     * the files paperclip would produce already exist and are unchanged, paperclip is not run at all.
      *
+     * @param cacheDirectory The directory to store the patch cache in.
+     * @param jarPool        The pool to read the paperclip jar through.
      * @return {@code Optional.empty()} if paperclip failed to execute, otherwise version info.
      */
-    public static Optional<VersionInfo> launchPaperclip() {
+    public static Optional<VersionInfo> launchPaperclip(Path cacheDirectory, JarPool jarPool) {
+        try (var ignored = StartupTimeline.phase("launchPaperclip")) {
+            return launchPaperclip0(cacheDirectory, jarPool);
+        }
+    }
+
+    private static Optional<VersionInfo> launchPaperclip0(Path cacheDirectory, JarPool jarPool) {
+        // checked first, since the verifier links paperclip's output even when paperclip is skipped
+        final var usesStore = usesStore(cacheDirectory);
         final var paperclipLocateResult = findPaperclip();
 
         if (paperclipLocateResult.isEmpty())
             return Optional.empty();
 
-        // launch paperclip to transform stuff
-        try (final var classLoader = Utils.classLoaderFor(paperclipLocateResult.get().path)) {
+        final var paperclipPath = paperclipLocateResult.get().path;
+        final VersionInfo version;
+        final MappedJar paperclip;
+
+        try {
+            paperclip = jarPool.get(paperclipPath);
+
             // guess minecraft version
-            final var reader = new Scanner(
-                Objects.requireNonNull(classLoader.getResourceAsStream("META-INF/versions.list"))
-            );
+            final var reader = new Scanner(new String(
+                Objects.requireNonNull(paperclip.read("META-INF/versions.list")),
+                StandardCharsets.UTF_8
+            ));
 
             final var hash = reader.next();
-            final var version = new VersionInfo(
+            final var libraries = getLibraries(paperclip);
+            version = new VersionInfo(
                 reader.next(),
                 hash,
-                getLibraryPaths(classLoader),
-                Path.of("versions").resolve(reader.next())
+                libraries.keySet().toArray(Path[]::new),
+                Path.of("versions").resolve(reader.next()),
+                libraries
             );
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        Log.info(LogCategory.GAME_PROVIDER, "Found paper %s", version);
+
+        final var cacheFile = cacheDirectory.resolve(PatchCache.FILE_NAME);
+
+        if (PatchCache.read(cacheFile).filter(cache -> cache.isValidFor(version)).isPresent()) {
+            Log.info(LogCategory.GAME_PROVIDER, "Patched jars are up to date, skipping paperclip");
+            return Optional.of(version);
+        }
 
-            Log.info(LogCategory.GAME_PROVIDER, "Found paper %s", version);
-            Log.info(LogCategory.GAME_PROVIDER, "Launching paperclip to generate patched jars");
+        if (materializeFromStore(version)) {
+            return Optional.of(version);
+        }
 
+        // paperclip and the patcher may write in place, which must not reach files shared through the store
+        if (usesStore) {
             try {
+                final var detached = ContentStore.detach(getOutputs(paperclip, version));
+
+                if (detached != 0) {
+                    Log.info(LogCategory.GAME_PROVIDER, "Replaced %d stored files with private copies", detached);
+                }
+            } catch (IOException e) {
+                Log.error(LogCategory.GAME_PROVIDER, "Failed to detach patched jars from the store", e);
+                return Optional.empty();
+            }
+        }
+
+        // launch paperclip to transform stuff, only now is a class loader for it needed
+        try (final var classLoader = Utils.classLoaderFor(paperclipPath)) {
+            final var applied = Boolean.getBoolean(LoaderProperties.NATIVE_PATCHER) &&
+                PatchApplier.apply(paperclip, classLoader);
+
+            if (!applied) {
+                Log.info(LogCategory.GAME_PROVIDER, "Launching paperclip to generate patched jars");
+
                 final var paperclipRes = invokePaperclip(classLoader);
 
                 if (paperclipRes != 0) {
                     Log.error(LogCategory.GAME_PROVIDER, "Paperclip exited with a non-zero code");
                     return Optional.empty();
                 }
-                return Optional.of(version);
-            } catch (Exception e) {
-                Log.error(LogCategory.GAME_PROVIDER, "Exception thrown while executing paperclip", e);
             }
+
+            // the patch cache is written by LibraryVerifier once the output has been checked against its hashes
+            return Optional.of(version);
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } catch (Exception e) {
+            Log.error(LogCategory.GAME_PROVIDER, "Exception thrown while executing paperclip", e);
         }
 
         return Optional.empty();
     }
 
     /**
-     * Get Paper / Minecraft library paths.
+     * Checks whether a store is configured, or was on an earlier boot, in which case files paperclip writes may be
+     * linked into it. Files stay linked after the store is unconfigured, so its use is recorded.
+     */
+    private static boolean usesStore(Path cacheDirectory) {
+        final var marker = cacheDirectory.resolve(STORE_MARKER);
+
+        if (ContentStore.fromProperties() == null) {
+            return Files.exists(marker);
+        }
+
+        try {
+            if (!Files.exists(marker)) {
+                Files.createDirectories(cacheDirectory);
+                Files.write(marker, new byte[0]);
+            }
+        } catch (IOException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to record that the store is used", e);
+        }
+
+        return true;
+    }
+
+    /**
+     * Lists the files paperclip writes, from its {@code versions.list}, {@code libraries.list} and
+     * {@code patches.list}. If they cannot be parsed, only the files the store links are listed.
+     */
+    private static List<Path> getOutputs(MappedJar paperclip, VersionInfo version) throws IOException {
+        final var outputs = new ArrayList<Path>();
+
+        try {
+            for (final var location : List.of("versions", "libraries")) {
+                final var list = paperclip.read("META-INF/" + location + ".list");
+
+                if (list != null) {
+                    FileEntry.parse(reader(list)).forEach(entry -> outputs.add(Path.of(location, entry.path())));
+                }
+            }
+
+            final var patches = paperclip.read("META-INF/patches.list");
+
+            if (patches != null) {
+                PatchApplier.PatchEntry.parse(reader(patches))
+                    .forEach(patch -> outputs.add(Path.of(patch.location(), patch.outputPath())));
+            }
+        } catch (IllegalArgumentException e) {
+            Log.debug(LogCategory.GAME_PROVIDER, "Cannot list paperclip's outputs: %s", e.getMessage());
+            return List.copyOf(LibraryVerifier.expectedHashes(version).keySet());
+        }
+
+        return outputs;
+    }
+
+    private static BufferedReader reader(byte[] data) {
+        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Links paperclip's output to the copies in the {@link ContentStore}, if one is configured and another server has
+     * already stored every file. The files are still verified afterwards, like paperclip's own output.
+     *
+     * @param version The version being launched.
+     * @return Whether paperclip can be skipped.
+     */
+    private static boolean materializeFromStore(VersionInfo version) {
+        final var store = ContentStore.fromProperties();
+
+        if (store == null) {
+            return false;
+        }
+
+        try {
+            if (store.materialize(LibraryVerifier.expectedHashes(version))) {
+                Log.info(LogCategory.GAME_PROVIDER, "Linked patched jars from the store, skipping paperclip");
+                return true;
+            }
+        } catch (IOException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to link patched jars from the store", e);
+        }
+
+        return false;
+    }
+
+    /**
+     * Get Paper / Minecraft library paths and their expected hashes.
      * Plugin downloads their libraries in the libraries folder. it can use same library but different version.
      * on runtime, it will cause issue. but on bootstrap, it can cause classpath conflict.
      *
-     * @return filtered library paths.
+     * @return filtered library paths, in classpath order, mapped to their SHA-256 hash.
      */
-    private static Path[] getLibraryPaths(ClassLoader loader) {
-        try (final var is = new BufferedReader(new InputStreamReader(Objects.requireNonNull(loader.getResourceAsStream("META-INF/libraries.list"))))) {
-            Path libraryPath = Path.of("libraries");
-            // We dont need hash / url
-            return is.lines().map(line -> libraryPath.resolve(line.split("\t")[2])).toArray(Path[]::new);
+    @VisibleForTesting
+    static Map<Path, String> getLibraries(MappedJar paperclip) {
+        try (final var is = new BufferedReader(new InputStreamReader(
+            new ByteArrayInputStream(Objects.requireNonNull(paperclip.read("META-INF/libraries.list"))),
+            StandardCharsets.UTF_8
+        ))) {
+            final var libraryPath = Path.of("libraries");
+            final var libraries = new LinkedHashMap<Path, String>();
+
+            for (final var entry : FileEntry.parse(is)) {
+                libraries.put(libraryPath.resolve(entry.path()), entry.hash());
+            }
+
+            return libraries;
         } catch (Exception e) {
             Log.error(LogCategory.GAME_PROVIDER, "Failed to read library paths from paperclip", e);
-            return new Path[0];
+            return Map.of();
         }
     }
 
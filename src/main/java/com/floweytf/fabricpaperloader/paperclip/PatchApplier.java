@@ -0,0 +1,289 @@
+package com.floweytf.fabricpaperloader.paperclip;
+
+import com.floweytf.fabricpaperloader.classpath.MappedJar;
+import com.floweytf.fabricpaperloader.diagnostics.StartupTimeline;
+import com.floweytf.fabricpaperloader.util.Utils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import org.jetbrains.annotations.Nullable;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Applies paperclip's patches without running paperclip, spreading the work over all cores. This mirrors what
+ * paperclip does in patch-only mode: extract the files listed by the vanilla jar, then those listed by paperclip,
+ * then apply the bsdiff patches from {@code patches.list}, verifying every file against its listed hash.
+ * <p>
+ * Only the bsdiff implementation itself is borrowed from the paperclip jar. Anything unexpected (a missing vanilla
+ * jar, an unknown list format, a hash mismatch) makes {@link #apply} return {@code false} so that the caller can
+ * fall back to running paperclip.
+ */
+public class PatchApplier {
+    private static final String PATCH_CLASS = "io.sigpipe.jbsdiff.Patch";
+
+    /**
+     * A line of {@code patches.list}.
+     */
+    record PatchEntry(
+        String location,
+        String originalHash,
+        String patchHash,
+        String outputHash,
+        String originalPath,
+        String patchPath,
+        String outputPath
+    ) {
+        static List<PatchEntry> parse(BufferedReader reader) throws IOException {
+            final var entries = new ArrayList<PatchEntry>();
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                final var parts = line.split("\t");
+
+                if (parts.length != 7) {
+                    throw new IllegalArgumentException("Unrecognized patch entry: " + line);
+                }
+
+                entries.add(new PatchEntry(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5], parts[6]));
+            }
+
+            return entries;
+        }
+    }
+
+    /**
+     * Produces a single output file.
+     *
+     * @param hash   The expected hash of the output.
+     * @param action Writes the output.
+     */
+    private record Task(String hash, Callable<Void> action) {
+    }
+
+    /**
+     * Thrown when the paperclip jar is not laid out the way we expect, which always means falling back.
+     */
+    private static class UnsupportedLayoutException extends Exception {
+        private UnsupportedLayoutException(String message) {
+            super(message);
+        }
+    }
+
+    private final MappedJar paperclip;
+    private final Method patchMethod;
+    private final Path repoDir = Path.of(System.getProperty("bundlerRepoDir", ""));
+
+    private PatchApplier(MappedJar paperclip, Method patchMethod) {
+        this.paperclip = paperclip;
+        this.patchMethod = patchMethod;
+    }
+
+    /**
+     * Applies paperclip's patches.
+     *
+     * @param paperclip       The paperclip jar.
+     * @param paperclipLoader A class loader for the paperclip jar, used to load its bundled bsdiff implementation.
+     * @return {@code true} if every file was produced and verified, {@code false} if paperclip should be run instead.
+     */
+    public static boolean apply(MappedJar paperclip, ClassLoader paperclipLoader) {
+        try (var ignored = StartupTimeline.phase("applyPatches")) {
+            final var patchMethod = Class.forName(PATCH_CLASS, true, paperclipLoader)
+                .getMethod("patch", byte[].class, byte[].class, OutputStream.class);
+
+            new PatchApplier(paperclip, patchMethod).run();
+            return true;
+        } catch (UnsupportedLayoutException | ReflectiveOperationException e) {
+            Log.info(
+                LogCategory.GAME_PROVIDER,
+                "Unsupported paperclip layout (%s), falling back to paperclip",
+                e.getMessage()
+            );
+        } catch (Exception e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to apply patches natively, falling back to paperclip", e);
+        }
+
+        return false;
+    }
+
+    @Nullable
+    private static BufferedReader reader(MappedJar jar, String name) throws IOException {
+        final var data = jar.read(name);
+        return data == null ? null : new BufferedReader(
+            new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8)
+        );
+    }
+
+    private static List<FileEntry> readList(MappedJar jar, String name) throws IOException {
+        try (final var reader = reader(jar, name)) {
+            return reader == null ? List.of() : FileEntry.parse(reader);
+        }
+    }
+
+    private static void checkHash(String what, byte[] data, String expected) throws IOException {
+        final var actual = Utils.sha256(data);
+
+        if (!actual.equalsIgnoreCase(expected)) {
+            throw new IOException("Hash mismatch for %s: expected %s, got %s".formatted(what, expected, actual));
+        }
+    }
+
+    private boolean isValid(Path file, String hash) throws IOException {
+        return Files.isRegularFile(file) && Utils.sha256(file).equalsIgnoreCase(hash);
+    }
+
+    /**
+     * Queues extraction of every file in a list from {@code jar}. An earlier task for the same output is kept if it
+     * produces the same file (paperclip does not bundle vanilla's libraries again), and replaced otherwise.
+     */
+    private void queueExtraction(Map<Path, Task> tasks, MappedJar jar, String location) throws Exception {
+        for (final var entry : readList(jar, "META-INF/" + location + ".list")) {
+            final var output = repoDir.resolve(location).resolve(entry.path());
+            final var source = "META-INF/" + location + "/" + entry.path();
+            final var queued = tasks.get(output);
+
+            if (queued != null && queued.hash().equalsIgnoreCase(entry.hash())) {
+                continue;
+            }
+
+            tasks.put(output, new Task(entry.hash(), () -> {
+                if (isValid(output, entry.hash())) {
+                    return null;
+                }
+
+                final var data = jar.read(source);
+
+                if (data == null) {
+                    throw new IOException("Missing " + source);
+                }
+
+                checkHash(source, data, entry.hash());
+                Utils.writeAtomically(output, data);
+                return null;
+            }));
+        }
+    }
+
+    private void queuePatch(Map<Path, Task> tasks, MappedJar vanilla, PatchEntry patch) {
+        final var output = repoDir.resolve(patch.location()).resolve(patch.outputPath());
+
+        tasks.put(output, new Task(patch.outputHash(), () -> {
+            if (isValid(output, patch.outputHash())) {
+                return null;
+            }
+
+            final var original = vanilla.read("META-INF/" + patch.location() + "/" + patch.originalPath());
+            final var patchData = paperclip.read("META-INF/" + patch.location() + "/" + patch.patchPath());
+
+            if (original == null || patchData == null) {
+                throw new IOException("Missing input for patch " + patch);
+            }
+
+            checkHash(patch.originalPath(), original, patch.originalHash());
+            checkHash(patch.patchPath(), patchData, patch.patchHash());
+
+            final var out = new ByteArrayOutputStream(original.length + patchData.length);
+
+            try {
+                patchMethod.invoke(null, original, patchData, out);
+            } catch (InvocationTargetException e) {
+                throw new IOException("Failed to apply patch " + patch.patchPath(), e.getCause());
+            }
+
+            final var result = out.toByteArray();
+            checkHash(patch.outputPath(), result, patch.outputHash());
+            Utils.writeAtomically(output, result);
+            return null;
+        }));
+    }
+
+    private Path findVanillaJar() throws Exception {
+        try (final var reader = reader(paperclip, "META-INF/download-context")) {
+            if (reader == null) {
+                throw new UnsupportedLayoutException("no download-context");
+            }
+
+            final var parts = reader.readLine().split("\t");
+
+            if (parts.length != 3) {
+                throw new UnsupportedLayoutException("unrecognized download-context");
+            }
+
+            final var vanillaJar = repoDir.resolve("cache").resolve(parts[2]);
+
+            // downloading is left to paperclip
+            if (!isValid(vanillaJar, parts[0])) {
+                throw new UnsupportedLayoutException("vanilla jar has not been downloaded");
+            }
+
+            return vanillaJar;
+        }
+    }
+
+    private void run() throws Exception {
+        final List<PatchEntry> patches;
+
+        try (final var reader = reader(paperclip, "META-INF/patches.list")) {
+            if (reader == null) {
+                throw new UnsupportedLayoutException("no patches.list");
+            }
+
+            patches = PatchEntry.parse(reader);
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedLayoutException(e.getMessage());
+        }
+
+        try (final var vanilla = MappedJar.open(findVanillaJar())) {
+            // later sources replace earlier ones for the same output, in the order paperclip writes them
+            final var tasks = new LinkedHashMap<Path, Task>();
+
+            try {
+                queueExtraction(tasks, vanilla, "versions");
+                queueExtraction(tasks, vanilla, "libraries");
+                queueExtraction(tasks, paperclip, "versions");
+                queueExtraction(tasks, paperclip, "libraries");
+            } catch (IllegalArgumentException e) {
+                throw new UnsupportedLayoutException(e.getMessage());
+            }
+
+            for (final var patch : patches) {
+                queuePatch(tasks, vanilla, patch);
+            }
+
+            Log.info(LogCategory.GAME_PROVIDER, "Applying %d paperclip patches natively", patches.size());
+
+            final var executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+            try {
+                for (final var future : executor.invokeAll(tasks.values().stream().map(Task::action).toList())) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.floweytf.fabricpaperloader.paperclip;
+
+import com.floweytf.fabricpaperloader.util.Utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * A manifest of the files produced by a paperclip run, used to skip re-patching when nothing has changed.
+ *
+ * @param paperclipHash The hash of the paper build, as declared by the first token of {@code versions.list}.
+ * @param entries       The files produced by paperclip.
+ */
+public record PatchCache(String paperclipHash, List<Entry> entries) {
+    public static final String FILE_NAME = "paperclip.cache";
+    private static final int MAGIC = 0x50434331; // PCC1
+
+    /**
+     * A single file produced by paperclip.
+     *
+     * @param path  The path of the file, as referenced by {@link VersionInfo}.
+     * @param size  The size of the file in bytes.
+     * @param mtime The last modified time of the file, in milliseconds.
+     * @param hash  The SHA-256 hash of the file, verified against paperclip's lists when the manifest was written.
+     */
+    public record Entry(Path path, long size, long mtime, String hash) {
+        static Entry capture(Path path) throws IOException {
+            return new Entry(path, Files.size(path), Files.getLastModifiedTime(path).toMillis(), Utils.sha256(path));
+        }
+
+        boolean isUnchanged() {
+            try {
+                return Files.size(path) == size && Files.getLastModifiedTime(path).toMillis() == mtime;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private static List<Path> producedFiles(VersionInfo version) {
+        return Stream.concat(
+            Stream.of(Objects.requireNonNull(version.requiredLibraries())),
+            Stream.of(Objects.requireNonNull(version.serverJarPath()))
+        ).toList();
+    }
+
+    /**
+     * Checks whether paperclip's output is still exactly what this manifest describes. Only the size and mtime of the
+     * files are compared, so this never hashes anything.
+     *
+     * @param version The version about to be launched.
+     * @return {@code true} if paperclip can safely be skipped.
+     */
+    public boolean isValidFor(VersionInfo version) {
+        if (!Objects.equals(paperclipHash, version.hash())) {
+            return false;
+        }
+
+        final var expected = producedFiles(version);
+        final var recorded = entries.stream().map(Entry::path).collect(Collectors.toSet());
+
+        if (expected.size() != entries.size() || !recorded.containsAll(expected)) {
+            return false;
+        }
+
+        return entries.stream().allMatch(Entry::isUnchanged);
+    }
+
+    /**
+     * Reads a manifest from disk.
+     *
+     * @param file The manifest file.
+     * @return The manifest, or empty if it does not exist or could not be read.
+     */
+    public static Optional<PatchCache> read(Path file) {
+        try (final var in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                Log.warn(LogCategory.GAME_PROVIDER, "Ignoring patch cache %s with unknown format", file);
+                return Optional.empty();
+            }
+
+            final var paperclipHash = in.readUTF();
+            final var count = in.readInt();
+            final var entries = new ArrayList<Entry>(count);
+
+            for (int i = 0; i < count; i++) {
+                entries.add(new Entry(Path.of(in.readUTF()), in.readLong(), in.readLong(), in.readUTF()));
+            }
+
+            return Optional.of(new PatchCache(paperclipHash, entries));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to read patch cache " + file, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes this manifest to disk, replacing any existing one atomically.
+     *
+     * @param file The manifest file.
+     * @throws IOException If the manifest could not be written.
+     */
+    public void write(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        final var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (final var out = new DataOutputStream(Files.newOutputStream(tmp))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(paperclipHash);
+            out.writeInt(entries.size());
+
+            for (final var entry : entries) {
+                out.writeUTF(entry.path().toString());
+                out.writeLong(entry.size());
+                out.writeLong(entry.mtime());
+                out.writeUTF(entry.hash());
+            }
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -5,18 +5,24 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.nio.file.Path;
+import java.util.Map;
 
 /**
  * The version of paper.
  *
- * @param version The Minecraft version, like 1.19.4 or 1.20.
- * @param hash    The hash of the jar, used to distinguish paper's own builds.
+ * @param version           The Minecraft version, like 1.19.4 or 1.20.
+ * @param hash              The hash of the jar, used to distinguish paper's own builds.
+ * @param requiredLibraries The libraries paperclip extracts, relative to the launch directory.
+ * @param serverJarPath     The patched server jar, whose expected SHA-256 is {@code hash}.
+ * @param libraryHashes     The expected SHA-256 of each of {@code requiredLibraries}, as declared by
+ *                          {@code libraries.list}.
  */
 public record VersionInfo(
     String version,
     @Nullable String hash,
     @Nullable Path[] requiredLibraries,
-    @Nullable Path serverJarPath
+    @Nullable Path serverJarPath,
+    @Nullable Map<Path, String> libraryHashes
 ) {
     public String rawVersion() {
         return version + "+" + hash;
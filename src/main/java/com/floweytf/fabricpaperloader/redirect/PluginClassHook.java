@@ -0,0 +1,103 @@
+package com.floweytf.fabricpaperloader.redirect;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Routes plugin classes through the {@link RedirectRule.Scope#PLUGIN} redirects. Bukkit hands every plugin class to
+ * {@code UnsafeValues.processClass}, which craftbukkit implements in {@code CraftMagicNumbers} to run its own
+ * rewriting; that method is patched to pass its result through {@link #process(byte[])} as well.
+ * <p>
+ * The patched method is in a game class, which reaches this class through Knot's parent class loader.
+ */
+public final class PluginClassHook {
+    private static final String METHOD = "processClass";
+
+    @Nullable
+    private static volatile RedirectEngine engine;
+
+    private PluginClassHook() {
+    }
+
+    static void setEngine(@Nullable RedirectEngine engine) {
+        PluginClassHook.engine = engine;
+    }
+
+    /**
+     * Checks whether a class is craftbukkit's {@code UnsafeValues} implementation, in any of its versioned packages.
+     */
+    static boolean isProcessClassOwner(String name) {
+        return name.startsWith("org.bukkit.craftbukkit.") && name.endsWith(".util.CraftMagicNumbers");
+    }
+
+    /**
+     * Called from the patched {@code processClass}.
+     *
+     * @param bytes The plugin class, after craftbukkit's rewriting.
+     * @return The class with the plugin redirects applied.
+     */
+    public static byte[] process(byte[] bytes) {
+        final var current = engine;
+        return current == null || bytes == null ? bytes : current.apply(bytes);
+    }
+
+    /**
+     * Patches {@code processClass} to return through {@link #process(byte[])}.
+     *
+     * @param name  The name of the class, for logging.
+     * @param bytes The class bytes.
+     * @return The patched class.
+     */
+    static byte[] patch(String name, byte[] bytes) {
+        final var reader = new ClassReader(bytes);
+        final var writer = new ClassWriter(reader, 0);
+        final var patched = new boolean[1];
+
+        reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+            @Override
+            public MethodVisitor visitMethod(int access, String methodName, String descriptor, String signature,
+                                             String[] exceptions) {
+                final var visitor = super.visitMethod(access, methodName, descriptor, signature, exceptions);
+
+                if (!methodName.equals(METHOD) || !descriptor.endsWith(")[B")) {
+                    return visitor;
+                }
+
+                patched[0] = true;
+
+                return new MethodVisitor(Opcodes.ASM9, visitor) {
+                    @Override
+                    public void visitInsn(int opcode) {
+                        if (opcode == Opcodes.ARETURN) {
+                            super.visitMethodInsn(
+                                Opcodes.INVOKESTATIC,
+                                Type.getInternalName(PluginClassHook.class),
+                                "process",
+                                "([B)[B",
+                                false
+                            );
+                        }
+
+                        super.visitInsn(opcode);
+                    }
+                };
+            }
+        }, 0);
+
+        if (!patched[0]) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Could not find %s in %s, plugin redirects will not apply", METHOD,
+                name);
+            return bytes;
+        }
+
+        Log.debug(LogCategory.GAME_PROVIDER, "Hooked %s.%s for plugin redirects", name, METHOD);
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,232 @@
+package com.floweytf.fabricpaperloader.redirect;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Applies {@link RedirectRule}s to classes in a single pass. Rules are indexed by owner (and by simple name for
+ * wildcard owners), and a class is only visited if its constant pool references a method some rule could match, which
+ * most classes do not. The rewrite never changes the shape of the stack, so the class is copied with its frames and
+ * maximums as they are.
+ */
+public class RedirectEngine {
+    private static final int CONSTANT_METHODREF_TAG = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF_TAG = 11;
+
+    private final Map<String, List<RedirectRule>> byOwner = new HashMap<>();
+    private final Map<String, List<RedirectRule>> bySimpleOwner = new HashMap<>();
+    private final Set<String> names = new HashSet<>();
+
+    private class RedirectingClassVisitor extends ClassVisitor {
+        private boolean isChanged = false;
+
+        private RedirectingClassVisitor(ClassVisitor visitor) {
+            super(Opcodes.ASM9, visitor);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                         String[] exceptions) {
+            return new RedirectingMethodVisitor(this, cv.visitMethod(access, name, descriptor, signature, exceptions));
+        }
+    }
+
+    private class RedirectingMethodVisitor extends MethodVisitor {
+        private final RedirectingClassVisitor owner;
+
+        private RedirectingMethodVisitor(RedirectingClassVisitor owner, MethodVisitor visitor) {
+            super(Opcodes.ASM9, visitor);
+            this.owner = owner;
+        }
+
+        private void remove(int opcode, String descriptor) {
+            final var arguments = Type.getArgumentTypes(descriptor);
+
+            for (int i = arguments.length - 1; i >= 0; i--) {
+                super.visitInsn(arguments[i].getSize() == 2 ? Opcodes.POP2 : Opcodes.POP);
+            }
+
+            if (opcode != Opcodes.INVOKESTATIC) {
+                super.visitInsn(Opcodes.POP);
+            }
+
+            switch (Type.getReturnType(descriptor).getSort()) {
+                case Type.VOID -> {
+                }
+                case Type.LONG -> super.visitInsn(Opcodes.LCONST_0);
+                case Type.FLOAT -> super.visitInsn(Opcodes.FCONST_0);
+                case Type.DOUBLE -> super.visitInsn(Opcodes.DCONST_0);
+                case Type.OBJECT, Type.ARRAY -> super.visitInsn(Opcodes.ACONST_NULL);
+                default -> super.visitInsn(Opcodes.ICONST_0);
+            }
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            final var rule = find(opcode, owner, name, descriptor);
+
+            if (rule == null) {
+                super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+                return;
+            }
+
+            this.owner.isChanged = true;
+
+            // the replacement is a static method on a class, whatever the original call was
+            switch (rule.kind()) {
+                case STATIC -> super.visitMethodInsn(
+                    Opcodes.INVOKESTATIC, rule.targetOwner(), rule.targetName(), descriptor, false
+                );
+                case INSTANCE -> {
+                    final var receiver = rule.isWildcard() ? "java/lang/Object" : owner;
+                    final var targetDescriptor = "(L" + receiver + ";" + descriptor.substring(1);
+                    super.visitMethodInsn(
+                        Opcodes.INVOKESTATIC, rule.targetOwner(), rule.targetName(), targetDescriptor, false
+                    );
+                }
+                case REMOVE -> remove(opcode, descriptor);
+            }
+        }
+    }
+
+    public RedirectEngine(Collection<RedirectRule> rules) {
+        for (final var rule : rules) {
+            final var index = rule.isWildcard() ? bySimpleOwner : byOwner;
+            final var key = rule.isWildcard() ? rule.simpleOwner() : rule.owner();
+            index.computeIfAbsent(key, ignored -> new ArrayList<>()).add(rule);
+            names.add(rule.name());
+        }
+    }
+
+    /**
+     * Creates an engine for the rules that apply to a scope.
+     */
+    public static RedirectEngine forScope(Collection<RedirectRule> rules, RedirectRule.Scope scope) {
+        return new RedirectEngine(rules.stream().filter(rule -> rule.scopes().contains(scope)).toList());
+    }
+
+    public boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    private static String simpleName(String owner) {
+        return owner.substring(owner.lastIndexOf('/') + 1);
+    }
+
+    private static boolean ownerMatches(Map<String, List<RedirectRule>> index, String key, String name) {
+        final var rules = index.get(key);
+
+        if (rules == null) {
+            return false;
+        }
+
+        for (final var rule : rules) {
+            if (rule.name().equals(name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Nullable
+    private static RedirectRule find(@Nullable List<RedirectRule> rules, int opcode, String name, String descriptor) {
+        if (rules == null) {
+            return null;
+        }
+
+        for (final var rule : rules) {
+            if (rule.name().equals(name) && (rule.desc() == null || rule.desc().equals(descriptor)) &&
+                rule.kind().accepts(opcode)) {
+                return rule;
+            }
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private RedirectRule find(int opcode, String owner, String name, String descriptor) {
+        if (!names.contains(name)) {
+            return null;
+        }
+
+        final var rule = find(byOwner.get(owner), opcode, name, descriptor);
+        return rule != null ? rule : find(bySimpleOwner.get(simpleName(owner)), opcode, name, descriptor);
+    }
+
+    /**
+     * Checks whether the class references a method some rule could match, by looking at the method references in its
+     * constant pool. This is much cheaper than visiting the class.
+     */
+    private boolean referencesTarget(ClassReader reader) {
+        final var buffer = new char[reader.getMaxStringLength()];
+
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            final var offset = reader.getItem(i);
+
+            // the second slot of a long/double constant has no item
+            if (offset == 0) {
+                continue;
+            }
+
+            final var tag = reader.readByte(offset - 1);
+
+            if (tag != CONSTANT_METHODREF_TAG && tag != CONSTANT_INTERFACE_METHODREF_TAG) {
+                continue;
+            }
+
+            final var nameAndType = reader.getItem(reader.readUnsignedShort(offset + 2));
+            final var name = reader.readUTF8(nameAndType, buffer);
+
+            if (!names.contains(name)) {
+                continue;
+            }
+
+            final var owner = reader.readClass(offset, buffer);
+
+            if (ownerMatches(byOwner, owner, name) || ownerMatches(bySimpleOwner, simpleName(owner), name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Applies the rules to a class.
+     *
+     * @param bytes The class bytes.
+     * @return The rewritten class bytes, or {@code bytes} itself if no call site matched.
+     */
+    public byte[] apply(byte[] bytes) {
+        if (isEmpty()) {
+            return bytes;
+        }
+
+        final var reader = new ClassReader(bytes);
+
+        if (!referencesTarget(reader)) {
+            return bytes;
+        }
+
+        final var writer = new ClassWriter(reader, 0);
+        final var visitor = new RedirectingClassVisitor(writer);
+        reader.accept(visitor, 0);
+
+        return visitor.isChanged ? writer.toByteArray() : bytes;
+    }
+}
@@ -0,0 +1,238 @@
+package com.floweytf.fabricpaperloader.redirect;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import net.fabricmc.loader.api.FabricLoader;
+import net.fabricmc.loader.api.metadata.CustomValue;
+import net.fabricmc.loader.impl.FormattedException;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * A call site rewrite. Mods declare rules under the {@value #METADATA_KEY} custom value of their
+ * {@code fabric.mod.json}, as an array of objects:
+ * <pre>{@code
+ * {
+ *   "kind": "static" | "instance" | "remove",
+ *   "owner": "java/lang/System" | "*\/ServerLib",
+ *   "name": "exit",
+ *   "desc": "(I)V",
+ *   "target": "com/example/Hooks.exit",
+ *   "scope": "game" | "plugin" | ["game", "plugin"]
+ * }
+ * }</pre>
+ * Names are in internal form. An owner of the form {@code *\/Name} matches a class called {@code Name} in any package,
+ * which covers shaded copies of a library. {@code desc} is optional and matches any descriptor when omitted;
+ * {@code scope} defaults to {@code game}.
+ *
+ * @param kind        What to do with matching calls.
+ * @param owner       The owner of the called method, or {@code *\/Name}.
+ * @param name        The name of the called method.
+ * @param desc        The descriptor of the called method, or {@code null} for any.
+ * @param targetOwner The class declaring the replacement method, {@code null} for {@link Kind#REMOVE}.
+ * @param targetName  The name of the replacement method, {@code null} for {@link Kind#REMOVE}.
+ * @param scopes      The classes the rule applies to.
+ */
+public record RedirectRule(
+    Kind kind,
+    String owner,
+    String name,
+    @Nullable String desc,
+    @Nullable String targetOwner,
+    @Nullable String targetName,
+    Set<Scope> scopes
+) {
+    public static final String METADATA_KEY = "fabric-paper-loader:redirects";
+    private static final String WILDCARD = "*/";
+
+    public enum Kind {
+        /**
+         * Replaces a static call with a call to a static method with the same descriptor.
+         */
+        STATIC,
+        /**
+         * Replaces a virtual or interface call with a call to a static method taking the receiver first. With a
+         * wildcard owner, the receiver is passed as {@code Object}.
+         */
+        INSTANCE,
+        /**
+         * Drops a call, discarding its arguments and leaving the default value of its return type.
+         */
+        REMOVE;
+
+        boolean accepts(int opcode) {
+            return switch (this) {
+                case STATIC -> opcode == Opcodes.INVOKESTATIC;
+                case INSTANCE -> opcode == Opcodes.INVOKEVIRTUAL || opcode == Opcodes.INVOKEINTERFACE;
+                case REMOVE -> opcode != Opcodes.INVOKESPECIAL;
+            };
+        }
+    }
+
+    public enum Scope {
+        /**
+         * Classes of the server and its libraries, before mixin sees them.
+         */
+        GAME,
+        /**
+         * Classes of bukkit plugins, after bukkit's own rewriting.
+         */
+        PLUGIN
+    }
+
+    public boolean isWildcard() {
+        return owner.startsWith(WILDCARD);
+    }
+
+    /**
+     * Gets the class name a wildcard owner matches.
+     */
+    String simpleOwner() {
+        return owner.substring(WILDCARD.length());
+    }
+
+    private static String getString(CustomValue.CvObject object, String key, boolean isRequired) {
+        final var value = object.get(key);
+
+        if (value == null || value.getType() == CustomValue.CvType.NULL) {
+            if (isRequired) {
+                throw new IllegalArgumentException("missing \"" + key + "\"");
+            }
+
+            return null;
+        }
+
+        if (value.getType() != CustomValue.CvType.STRING || value.getAsString().isEmpty()) {
+            throw new IllegalArgumentException("\"" + key + "\" must be a non-empty string");
+        }
+
+        return value.getAsString();
+    }
+
+    private static <T extends Enum<T>> T parseEnum(Class<T> type, String value, String key) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown " + key + " \"" + value + "\"");
+        }
+    }
+
+    private static Set<Scope> parseScopes(CustomValue.CvObject object) {
+        final var value = object.get("scope");
+
+        if (value == null) {
+            return EnumSet.of(Scope.GAME);
+        }
+
+        final var scopes = EnumSet.noneOf(Scope.class);
+
+        if (value.getType() == CustomValue.CvType.ARRAY) {
+            for (final var element : value.getAsArray()) {
+                if (element.getType() != CustomValue.CvType.STRING) {
+                    throw new IllegalArgumentException("\"scope\" must only contain strings");
+                }
+
+                scopes.add(parseEnum(Scope.class, element.getAsString(), "scope"));
+            }
+        } else if (value.getType() == CustomValue.CvType.STRING) {
+            scopes.add(parseEnum(Scope.class, value.getAsString(), "scope"));
+        } else {
+            throw new IllegalArgumentException("\"scope\" must be a string or an array of strings");
+        }
+
+        if (scopes.isEmpty()) {
+            throw new IllegalArgumentException("\"scope\" must not be empty");
+        }
+
+        return scopes;
+    }
+
+    /**
+     * Parses a rule from its metadata form.
+     *
+     * @throws IllegalArgumentException If the rule is malformed.
+     */
+    static RedirectRule parse(CustomValue value) {
+        if (value.getType() != CustomValue.CvType.OBJECT) {
+            throw new IllegalArgumentException("a redirect must be an object");
+        }
+
+        final var object = value.getAsObject();
+        final var kind = parseEnum(Kind.class, getString(object, "kind", true), "kind");
+        final var owner = getString(object, "owner", true);
+        final var target = getString(object, "target", kind != Kind.REMOVE);
+
+        if (owner.startsWith(WILDCARD) && owner.indexOf('/', WILDCARD.length()) != -1) {
+            throw new IllegalArgumentException("a wildcard owner must be of the form */Name, got " + owner);
+        }
+
+        String targetOwner = null;
+        String targetName = null;
+
+        if (target != null) {
+            if (kind == Kind.REMOVE) {
+                throw new IllegalArgumentException("\"target\" is meaningless for a remove redirect");
+            }
+
+            final var dot = target.lastIndexOf('.');
+
+            if (dot <= 0 || dot == target.length() - 1) {
+                throw new IllegalArgumentException("\"target\" must be of the form owner.name, got " + target);
+            }
+
+            targetOwner = target.substring(0, dot);
+            targetName = target.substring(dot + 1);
+        }
+
+        return new RedirectRule(
+            kind,
+            owner,
+            getString(object, "name", true),
+            getString(object, "desc", false),
+            targetOwner,
+            targetName,
+            parseScopes(object)
+        );
+    }
+
+    /**
+     * Collects the rules declared by every resolved mod.
+     *
+     * @throws FormattedException If a mod declares a malformed rule.
+     */
+    public static List<RedirectRule> collectFromMods() {
+        final var rules = new ArrayList<RedirectRule>();
+
+        for (final var mod : FabricLoader.getInstance().getAllMods()) {
+            final var metadata = mod.getMetadata();
+            final var value = metadata.getCustomValue(METADATA_KEY);
+
+            if (value == null) {
+                continue;
+            }
+
+            try {
+                if (value.getType() != CustomValue.CvType.ARRAY) {
+                    throw new IllegalArgumentException(METADATA_KEY + " must be an array");
+                }
+
+                for (final var element : value.getAsArray()) {
+                    rules.add(parse(element));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new FormattedException(
+                    "Invalid redirect",
+                    "Mod %s declares an invalid redirect: %s",
+                    metadata.getId(),
+                    e.getMessage()
+                );
+            }
+        }
+
+        return rules;
+    }
+}
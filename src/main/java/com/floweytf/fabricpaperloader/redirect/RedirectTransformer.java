@@ -0,0 +1,86 @@
+package com.floweytf.fabricpaperloader.redirect;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import net.fabricmc.loader.impl.launch.FabricLauncherBase;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Applies mod-declared {@link RedirectRule}s. Game redirects run on the server and library classes before fabric's
+ * transforms and mixin, as part of the game transformer; plugin redirects are installed through
+ * {@link PluginClassHook}. Mod classes are never redirected, since they usually contain the redirect targets.
+ */
+public class RedirectTransformer {
+    private final RedirectEngine game;
+    private final boolean hasPluginRules;
+    private final Set<String> modPackages;
+
+    private RedirectTransformer(RedirectEngine game, boolean hasPluginRules, Set<String> modPackages) {
+        this.game = game;
+        this.hasPluginRules = hasPluginRules;
+        this.modPackages = modPackages;
+    }
+
+    /**
+     * Creates a transformer for the given rules, and points {@link PluginClassHook} at the plugin rules.
+     *
+     * @param rules       The rules.
+     * @param modPackages The packages, in internal form, that mods have classes in.
+     * @return The transformer, or {@code null} if there are no rules.
+     */
+    @Nullable
+    public static RedirectTransformer create(List<RedirectRule> rules, Set<String> modPackages) {
+        if (rules.isEmpty()) {
+            return null;
+        }
+
+        final var game = RedirectEngine.forScope(rules, RedirectRule.Scope.GAME);
+        final var plugin = RedirectEngine.forScope(rules, RedirectRule.Scope.PLUGIN);
+        PluginClassHook.setEngine(plugin.isEmpty() ? null : plugin);
+
+        return new RedirectTransformer(game, !plugin.isEmpty(), modPackages);
+    }
+
+    private boolean isModClass(String name) {
+        final var dot = name.lastIndexOf('.');
+        return modPackages.contains(dot == -1 ? "" : name.substring(0, dot).replace('.', '/'));
+    }
+
+    /**
+     * Redirects a class.
+     *
+     * @param name  The binary name of the class.
+     * @param bytes The class bytes, or {@code null} if nothing has read them yet.
+     * @return The redirected class bytes, or {@code bytes} if the class was left alone.
+     */
+    @Nullable
+    public byte[] transform(String name, @Nullable byte[] bytes) {
+        final var isHookTarget = hasPluginRules && PluginClassHook.isProcessClassOwner(name);
+
+        if ((game.isEmpty() && !isHookTarget) || isModClass(name)) {
+            return bytes;
+        }
+
+        var input = bytes;
+
+        if (input == null) {
+            try {
+                input = FabricLauncherBase.getLauncher().getClassByteArray(name, false);
+            } catch (IOException e) {
+                Log.warn(LogCategory.GAME_PROVIDER, "Failed to read " + name + " for redirects", e);
+                return null;
+            }
+
+            if (input == null) {
+                return null;
+            }
+        }
+
+        final var output = game.apply(input);
+        return isHookTarget ? PluginClassHook.patch(name, output) : output;
+    }
+}
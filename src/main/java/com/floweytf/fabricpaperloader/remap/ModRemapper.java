@@ -0,0 +1,527 @@
+package com.floweytf.fabricpaperloader.remap;
+
+import com.floweytf.fabricpaperloader.LoaderProperties;
+import com.floweytf.fabricpaperloader.classpath.ContentStore;
+import com.floweytf.fabricpaperloader.classpath.JarPool;
+import com.floweytf.fabricpaperloader.classpath.MappedJar;
+import com.floweytf.fabricpaperloader.paperclip.VersionInfo;
+import com.floweytf.fabricpaperloader.util.Utils;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import net.fabricmc.accesswidener.AccessWidenerReader;
+import net.fabricmc.accesswidener.AccessWidenerRemapper;
+import net.fabricmc.accesswidener.AccessWidenerVisitor;
+import net.fabricmc.accesswidener.AccessWidenerWriter;
+import net.fabricmc.loader.impl.FormattedException;
+import net.fabricmc.loader.impl.lib.mappingio.MappingReader;
+import net.fabricmc.loader.impl.lib.mappingio.tree.MappingTree;
+import net.fabricmc.loader.impl.lib.mappingio.tree.MemoryMappingTree;
+import net.fabricmc.loader.impl.lib.tinyremapper.InputTag;
+import net.fabricmc.loader.impl.lib.tinyremapper.NonClassCopyMode;
+import net.fabricmc.loader.impl.lib.tinyremapper.OutputConsumerPath;
+import net.fabricmc.loader.impl.lib.tinyremapper.TinyRemapper;
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import net.fabricmc.loader.impl.util.mappings.TinyRemapperMappingsHelper;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.commons.Remapper;
+
+/**
+ * Remaps mods built against another namespace (by default mojang's names, as paperweight uses) to the names paper
+ * runs with, using the mappings paper ships in its server jar. The runtime namespace is whichever one the server
+ * jar's classes are actually named in.
+ * <p>
+ * Remapped jars are kept in a cache keyed by the hash of the mod and the paper build, so only new or changed mods are
+ * remapped. The targets in mixin annotations are remapped by tiny-remapper's mixin extension, where fabric loader ships
+ * it. A mod's access widener and refmaps are remapped along with its classes, the access widener's header being
+ * rewritten to the namespace fabric runs with. With a {@link ContentStore}, servers running the same mods share one
+ * copy of each remapped jar.
+ */
+public final class ModRemapper {
+    public static final String DEFAULT_SOURCE_NAMESPACE = "mojang+yarn";
+    private static final String MAPPINGS_ENTRY = "META-INF/mappings/reobf.tiny";
+    private static final String FORMAT = "3";
+    private static final String MIXIN_EXTENSION =
+        "net.fabricmc.loader.impl.lib.tinyremapper.extension.mixin.MixinExtension";
+
+    private ModRemapper() {
+    }
+
+    /**
+     * The files of a mod, besides its classes, that name game classes and members.
+     *
+     * @param mixins        Whether the mod declares mixin configs.
+     * @param accessWidener The path of the access widener in the jar, if any.
+     * @param refmaps       The paths of the refmaps its mixin configs use.
+     */
+    private record ModResources(boolean mixins, @Nullable String accessWidener, Set<String> refmaps) {
+        private static final ModResources NONE = new ModResources(false, null, Set.of());
+
+        private boolean contains(String path) {
+            return path.equals(accessWidener) || refmaps.contains(path);
+        }
+    }
+
+    /**
+     * Remaps a mod's access widener and refmaps as tiny-remapper copies its other files.
+     */
+    private record ResourceRemapper(Path mod, ModResources resources, String targetNamespace)
+        implements OutputConsumerPath.ResourceRemapper {
+        @Override
+        public boolean canTransform(TinyRemapper remapper, Path relativePath) {
+            return resources.contains(relativePath.toString());
+        }
+
+        @Override
+        public void transform(
+            Path destinationDirectory,
+            Path relativePath,
+            InputStream input,
+            TinyRemapper remapper
+        ) throws IOException {
+            final var path = relativePath.toString();
+            final var bytes = input.readAllBytes();
+            final var names = remapper.getEnvironment().getRemapper();
+            final byte[] remapped;
+
+            try {
+                remapped = path.equals(resources.accessWidener())
+                    ? remapAccessWidener(bytes, names, targetNamespace)
+                    : remapRefmap(bytes, names);
+            } catch (RuntimeException | LinkageError e) {
+                throw new IOException("Failed to remap " + path + " of " + mod.getFileName(), e);
+            }
+
+            final var output = destinationDirectory.resolve(path);
+
+            if (output.getParent() != null) {
+                Files.createDirectories(output.getParent());
+            }
+
+            Files.write(output, remapped);
+        }
+    }
+
+    private static MemoryMappingTree readMappings(MappedJar serverJar) throws IOException {
+        final var bytes = serverJar.read(MAPPINGS_ENTRY);
+
+        if (bytes == null) {
+            throw new FormattedException(
+                "Cannot remap mods",
+                "%s does not contain %s, so mods cannot be remapped to it",
+                serverJar.getPath(), MAPPINGS_ENTRY
+            );
+        }
+
+        final var tree = new MemoryMappingTree();
+
+        try (final var reader = new BufferedReader(
+            new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)
+        )) {
+            MappingReader.read(reader, tree);
+        }
+
+        return tree;
+    }
+
+    private static List<String> getNamespaces(MappingTree tree) {
+        final var namespaces = new ArrayList<String>();
+        namespaces.add(tree.getSrcNamespace());
+        namespaces.addAll(tree.getDstNamespaces());
+        return namespaces;
+    }
+
+    /**
+     * Finds the namespace the server jar's classes are named in, by looking up a class whose name differs in every
+     * namespace.
+     */
+    private static String detectRuntimeNamespace(MappingTree tree, MappedJar serverJar) {
+        final var namespaces = getNamespaces(tree);
+
+        for (final var mapping : tree.getClasses()) {
+            final var names = new ArrayList<String>(namespaces.size());
+
+            for (int i = 0; i < namespaces.size(); i++) {
+                names.add(mapping.getName(i == 0 ? MappingTree.SRC_NAMESPACE_ID : i - 1));
+            }
+
+            if (names.contains(null) || new HashSet<>(names).size() != names.size()) {
+                continue;
+            }
+
+            for (int i = 0; i < names.size(); i++) {
+                if (serverJar.contains(names.get(i) + ".class")) {
+                    return namespaces.get(i);
+                }
+            }
+        }
+
+        throw new FormattedException(
+            "Cannot remap mods",
+            "None of the namespaces %s in %s match the classes in %s",
+            namespaces, MAPPINGS_ENTRY, serverJar.getPath()
+        );
+    }
+
+    private static String cacheKey(Path mod, VersionInfo version, String from, String to, String targetNamespace) {
+        try {
+            final var key = String.join("\n", FORMAT, Utils.sha256(mod), version.hash(), from, to, targetNamespace);
+            return Utils.sha256(key.getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String outputName(Path mod, String key) {
+        final var name = mod.getFileName().toString();
+        return name.substring(0, name.length() - ".jar".length()) + "-" + key + ".jar";
+    }
+
+    /**
+     * Remaps the mods in a directory, reusing earlier output where possible. Output no longer produced by any mod is
+     * deleted.
+     *
+     * @param input     The directory containing the mods to remap.
+     * @param output    The directory to keep the remapped mods in.
+     * @param version   The paper version being launched.
+     * @param pool      The pool to read the server jar through.
+     * @param classPath The game, library, loader and other mod jars, which the mods are remapped against.
+     * @param targetNamespace The namespace fabric runs with, which access wideners must declare.
+     * @return The remapped mods, in the order of their file names.
+     * @throws IOException If a mod could not be read or remapped.
+     */
+    public static List<Path> remap(
+        Path input,
+        Path output,
+        VersionInfo version,
+        JarPool pool,
+        List<Path> classPath,
+        String targetNamespace
+    ) throws IOException {
+        final List<Path> mods;
+
+        try (Stream<Path> files = Files.list(input)) {
+            mods = files.filter(file -> file.getFileName().toString().endsWith(".jar") && Files.isRegularFile(file))
+                .sorted()
+                .toList();
+        }
+
+        if (mods.isEmpty()) {
+            return List.of();
+        }
+
+        final var serverJar = pool.get(version.serverJarPath());
+        final var mappings = readMappings(serverJar);
+        final var from = System.getProperty(LoaderProperties.REMAP_NAMESPACE, DEFAULT_SOURCE_NAMESPACE);
+
+        if (!getNamespaces(mappings).contains(from)) {
+            throw new FormattedException(
+                "Cannot remap mods",
+                "Unknown namespace %s, %s provides %s",
+                from, MAPPINGS_ENTRY, getNamespaces(mappings)
+            );
+        }
+
+        final var to = detectRuntimeNamespace(mappings, serverJar);
+
+        if (from.equals(to)) {
+            Log.info(LogCategory.GAME_PROVIDER, "Paper runs with %s names, %d mods need no remapping", to, mods.size());
+            return mods;
+        }
+
+        final Map<Path, Path> outputs;
+
+        try {
+            outputs = mods.parallelStream().collect(Collectors.toMap(
+                mod -> mod,
+                mod -> output.resolve(outputName(mod, cacheKey(mod, version, from, to, targetNamespace))),
+                (a, b) -> a,
+                LinkedHashMap::new
+            ));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        final var pending = new LinkedHashMap<Path, Path>();
+        outputs.forEach((mod, remapped) -> {
+            if (!Files.exists(remapped)) {
+                pending.put(mod, remapped);
+            }
+        });
+
+        Files.createDirectories(output);
+
+        if (!pending.isEmpty()) {
+            remap(pending, mappings, from, to, classPath, targetNamespace);
+        }
+
+        try (Stream<Path> files = Files.list(output)) {
+            for (final var stale : files.filter(file -> !outputs.containsValue(file)).toList()) {
+                Files.deleteIfExists(stale);
+            }
+        }
+
+        return List.copyOf(outputs.values());
+    }
+
+    /**
+     * Adds tiny-remapper's mixin extension, which remaps the targets named in mixin annotations. It is looked up
+     * reflectively, since whether fabric loader bundles it depends on the loader version.
+     *
+     * @return Whether the extension was added.
+     */
+    private static boolean addMixinExtension(TinyRemapper.Builder builder) {
+        try {
+            final var extension = Class.forName(MIXIN_EXTENSION).getConstructor().newInstance();
+            final var extensionType = Class.forName(TinyRemapper.class.getName() + "$Extension");
+            builder.getClass().getMethod("extension", extensionType).invoke(builder, extension);
+            return true;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            Log.debug(LogCategory.GAME_PROVIDER, "Tiny-remapper's mixin extension is unavailable: %s", e);
+            return false;
+        }
+    }
+
+    @Nullable
+    private static JsonObject readJson(MappedJar jar, String path) throws IOException {
+        final var bytes = jar.read(path);
+        return bytes == null ? null : new Gson().fromJson(new String(bytes, StandardCharsets.UTF_8), JsonObject.class);
+    }
+
+    @Nullable
+    private static String getString(JsonObject object, String key) {
+        final var value = object.get(key);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+
+    /**
+     * Finds the access widener and refmaps a mod declares, through its {@code fabric.mod.json} and mixin configs.
+     */
+    private static ModResources readResources(Path mod) {
+        try (final var jar = MappedJar.open(mod)) {
+            final var metadata = readJson(jar, "fabric.mod.json");
+
+            if (metadata == null) {
+                return ModResources.NONE;
+            }
+
+            final var mixins = metadata.get("mixins");
+            final var configs = mixins != null && mixins.isJsonArray() ? mixins.getAsJsonArray() : new JsonArray();
+            final var refmaps = new HashSet<String>();
+
+            for (final var entry : configs) {
+                // either the config's path, or an object with the path and the side it applies on
+                final var path = entry.isJsonObject()
+                    ? getString(entry.getAsJsonObject(), "config")
+                    : entry.getAsString();
+                final var config = path == null ? null : readJson(jar, path);
+                final var refmap = config == null ? null : getString(config, "refmap");
+
+                if (refmap != null) {
+                    refmaps.add(refmap);
+                }
+            }
+
+            return new ModResources(!configs.isEmpty(), getString(metadata, "accessWidener"), Set.copyOf(refmaps));
+        } catch (IOException | RuntimeException e) {
+            // fabric reports broken metadata itself
+            return ModResources.NONE;
+        }
+    }
+
+    /**
+     * Remaps an access widener. Its entries use the names the mod was built against, whatever its header says, and
+     * its header is rewritten to the namespace fabric checks access wideners against.
+     */
+    private static byte[] remapAccessWidener(byte[] bytes, Remapper remapper, String targetNamespace) {
+        final var header = new String[1];
+
+        new AccessWidenerReader(new AccessWidenerVisitor() {
+            @Override
+            public void visitHeader(String namespace) {
+                header[0] = namespace;
+            }
+        }).read(bytes);
+
+        final var writer = new AccessWidenerWriter();
+        new AccessWidenerReader(new AccessWidenerRemapper(writer, remapper, header[0], targetNamespace)).read(bytes);
+        return writer.write();
+    }
+
+    /**
+     * Remaps the targets in a refmap, both its default mappings and those of every environment in its data.
+     */
+    private static byte[] remapRefmap(byte[] bytes, Remapper remapper) {
+        final var gson = new Gson();
+        final var refmap = gson.fromJson(new String(bytes, StandardCharsets.UTF_8), JsonObject.class);
+        remapTargets(refmap.get("mappings"), remapper);
+
+        final var data = refmap.get("data");
+
+        if (data != null && data.isJsonObject()) {
+            for (final var environment : data.getAsJsonObject().entrySet()) {
+                remapTargets(environment.getValue(), remapper);
+            }
+        }
+
+        return gson.toJson(refmap).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void remapTargets(@Nullable JsonElement mixins, Remapper remapper) {
+        if (mixins == null || !mixins.isJsonObject()) {
+            return;
+        }
+
+        for (final var mixin : mixins.getAsJsonObject().entrySet()) {
+            if (!mixin.getValue().isJsonObject()) {
+                continue;
+            }
+
+            for (final var target : mixin.getValue().getAsJsonObject().entrySet()) {
+                if (target.getValue().isJsonPrimitive()) {
+                    target.setValue(new JsonPrimitive(remapReference(target.getValue().getAsString(), remapper)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Remaps a target as mixin writes them in refmaps: a class name, {@code Lowner;name(desc)} for a method, or
+     * {@code Lowner;name:desc} for a field.
+     */
+    private static String remapReference(String reference, Remapper remapper) {
+        final var semicolon = reference.indexOf(';');
+
+        if (!reference.startsWith("L") || semicolon == -1) {
+            final var isClass = reference.indexOf('(') == -1 && reference.indexOf(':') == -1;
+            return isClass ? remapper.map(reference) : reference;
+        }
+
+        final var owner = reference.substring(1, semicolon);
+        final var member = reference.substring(semicolon + 1);
+        final var paren = member.indexOf('(');
+        final var colon = member.indexOf(':');
+        final String remapped;
+
+        if (paren != -1) {
+            final var descriptor = member.substring(paren);
+            remapped = remapper.mapMethodName(owner, member.substring(0, paren), descriptor) +
+                remapper.mapMethodDesc(descriptor);
+        } else if (colon != -1) {
+            final var descriptor = member.substring(colon + 1);
+            remapped = remapper.mapFieldName(owner, member.substring(0, colon), descriptor) + ":" +
+                remapper.mapDesc(descriptor);
+        } else {
+            // a bare name cannot be resolved without its descriptor
+            remapped = member;
+        }
+
+        return "L" + remapper.map(owner) + ";" + remapped;
+    }
+
+    /**
+     * Remaps mods with a single remapper, so the class path is read once. Each mod is read under its own tag, all of
+     * them in parallel, and then written out separately.
+     */
+    private static void remap(
+        Map<Path, Path> pending,
+        MappingTree mappings,
+        String from,
+        String to,
+        List<Path> classPath,
+        String targetNamespace
+    ) throws IOException {
+        final var start = System.nanoTime();
+        final var store = ContentStore.fromProperties();
+        final var builder = TinyRemapper.newRemapper()
+            .withMappings(TinyRemapperMappingsHelper.create(mappings, from, to))
+            .renameInvalidLocals(false);
+
+        final var resources = new LinkedHashMap<Path, ModResources>();
+        pending.keySet().forEach(mod -> resources.put(mod, readResources(mod)));
+
+        if (!addMixinExtension(builder)) {
+            resources.forEach((mod, modResources) -> {
+                // refmapped targets are still remapped, through the refmap
+                if (modResources.mixins() && modResources.refmaps().isEmpty()) {
+                    Log.warn(
+                        LogCategory.GAME_PROVIDER,
+                        "%s declares mixins without a refmap, and their targets cannot be remapped with this " +
+                            "fabric loader. They will fail to apply unless they already use %s names",
+                        mod.getFileName(), to
+                    );
+                }
+            });
+        }
+
+        final var remapper = builder.build();
+
+        try {
+            final var reads = new ArrayList<CompletableFuture<?>>();
+            final var tags = new LinkedHashMap<Path, InputTag>();
+
+            reads.add(remapper.readClassPathAsync(classPath.toArray(Path[]::new)));
+
+            for (final var mod : pending.keySet()) {
+                final var tag = remapper.createInputTag();
+                tags.put(mod, tag);
+                reads.add(remapper.readInputsAsync(tag, mod));
+            }
+
+            CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new)).join();
+
+            for (final var entry : tags.entrySet()) {
+                final var mod = entry.getKey();
+                final var remapped = pending.get(mod);
+                final var tmp = remapped.resolveSibling(remapped.getFileName() + ".tmp");
+                Files.deleteIfExists(tmp);
+
+                final var resourceRemappers = new ArrayList<>(NonClassCopyMode.FIX_META_INF.remappers);
+                resourceRemappers.add(new ResourceRemapper(mod, resources.get(mod), targetNamespace));
+
+                try (final var out = new OutputConsumerPath.Builder(tmp).build()) {
+                    out.addNonClassFiles(mod, remapper, resourceRemappers);
+                    remapper.apply(out, entry.getValue());
+                }
+
+                Files.move(tmp, remapped, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                if (store != null) {
+                    store.intern(remapped, Utils.sha256(remapped));
+                }
+            }
+        } finally {
+            remapper.finish();
+        }
+
+        Log.info(
+            LogCategory.GAME_PROVIDER,
+            "Remapped %d mods from %s to %s in %d ms",
+            pending.size(), from, to, (System.nanoTime() - start) / 1_000_000
+        );
+    }
+}
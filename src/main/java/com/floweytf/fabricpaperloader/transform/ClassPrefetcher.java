@@ -0,0 +1,157 @@
+package com.floweytf.fabricpaperloader.transform;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+
+/**
+ * Records the classes loaded through Knot up to the end of startup, and on later boots loads them ahead of time on
+ * background threads, so that transforming them does not stall paper's main thread. Recordings are tied to a
+ * {@link ModSetFingerprint}, so changing paper or any mod discards them.
+ */
+public class ClassPrefetcher {
+    public static final String FILE_NAME = "prefetch.list";
+    private static final String HEADER = "# fabric-paper-loader prefetch ";
+
+    private ClassPrefetcher() {
+    }
+
+    /**
+     * Records class names in the order Knot asks for them to be transformed.
+     */
+    public static class Recorder implements TransformStage {
+        private final Queue<String> names = new ConcurrentLinkedQueue<>();
+        private volatile boolean isStopped = false;
+
+        @Override
+        public byte[] transform(String name, byte[] bytes, UnaryOperator<byte[]> next) {
+            if (!isStopped) {
+                names.add(name);
+            }
+
+            return next.apply(bytes);
+        }
+
+        /**
+         * Stops recording and writes the recording out.
+         *
+         * @param file        The file to write.
+         * @param fingerprint The fingerprint of the current mod set.
+         */
+        public void write(Path file, String fingerprint) {
+            isStopped = true;
+            final var unique = new LinkedHashSet<>(names);
+            // the recorder stays installed for the life of the server, so let go of the recording
+            names.clear();
+
+            try {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                final var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+                try (final var out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    out.write(HEADER + fingerprint);
+                    out.newLine();
+
+                    for (final var name : unique) {
+                        out.write(name);
+                        out.newLine();
+                    }
+                }
+
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Log.info(LogCategory.GAME_PROVIDER, "Recorded %d classes for prefetching", unique.size());
+            } catch (IOException e) {
+                Log.warn(LogCategory.GAME_PROVIDER, "Failed to write prefetch list " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Reads a recording.
+     *
+     * @param file        The recording.
+     * @param fingerprint The fingerprint of the current mod set.
+     * @return The recorded class names in load order, or empty if there is no recording for this fingerprint.
+     */
+    public static Optional<List<String>> read(Path file, String fingerprint) {
+        try {
+            final var lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+
+            if (lines.isEmpty() || !lines.get(0).equals(HEADER + fingerprint)) {
+                Log.info(LogCategory.GAME_PROVIDER, "Discarding prefetch list recorded for another mod set");
+                return Optional.empty();
+            }
+
+            return Optional.of(lines.subList(1, lines.size()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to read prefetch list " + file, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Starts loading a recording on background threads. Classes are loaded but not initialized, so no static
+     * initializer runs earlier than it would have. Loading stops once startup is done, since the recording ends there.
+     *
+     * @param names   The recorded class names.
+     * @param loader  Knot's class loader.
+     * @param monitor The startup monitor, which must be installed.
+     */
+    public static void replay(List<String> names, ClassLoader loader, StartupMonitor monitor) {
+        // mixin application is serialized, so more threads mostly contend on its lock
+        final var threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        final var cursor = new AtomicInteger();
+        final var remaining = new AtomicInteger(threads);
+        final var failed = new AtomicInteger();
+        final var start = System.nanoTime();
+
+        Log.info(LogCategory.GAME_PROVIDER, "Prefetching %d classes on %d threads", names.size(), threads);
+
+        for (int i = 0; i < threads; i++) {
+            final var thread = new Thread(() -> {
+                int index;
+
+                try {
+                    while (!monitor.isDone() && (index = cursor.getAndIncrement()) < names.size()) {
+                        try {
+                            Class.forName(names.get(index), false, loader);
+                        } catch (ClassNotFoundException | LinkageError | RuntimeException e) {
+                            // generated at runtime, gone since recording, or failing to transform (knot wraps that in
+                            // a RuntimeException), which the main thread reports when it loads the class itself
+                            failed.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        Log.info(
+                            LogCategory.GAME_PROVIDER,
+                            "Prefetched %d classes in %d ms (%d failed)",
+                            Math.min(cursor.get(), names.size()),
+                            (System.nanoTime() - start) / 1_000_000,
+                            failed.get()
+                        );
+                    }
+                }
+            }, "Paper Loader Prefetch #" + i);
+
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.start();
+        }
+    }
+}
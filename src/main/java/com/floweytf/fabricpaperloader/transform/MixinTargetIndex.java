@@ -0,0 +1,169 @@
+package com.floweytf.fabricpaperloader.transform;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.MixinEnvironment;
+import org.spongepowered.asm.mixin.Mixins;
+import org.spongepowered.asm.mixin.extensibility.IMixinConfig;
+
+/**
+ * Lets game classes that no mixin targets skip the mixin transformer, which otherwise parses every class it is handed.
+ * <p>
+ * Mixin only selects and prepares its configs when it transforms its first class, and removes them from
+ * {@link Mixins#getConfigs()} as it does so. The index is therefore built lazily from mixin's processor once no config
+ * is left unvisited, and dropped whenever a new config shows up. Only classes in packages that exist solely in the
+ * game jars take the fast path: mod packages can contain mixins and their inner classes, which mixin must always see.
+ */
+public class MixinTargetIndex implements TransformStage {
+    private final Set<String> gamePackages;
+    private final AtomicLong fastPath = new AtomicLong();
+    private final AtomicLong slowPath = new AtomicLong();
+
+    private volatile Set<String> targets;
+    private boolean isBroken = false;
+
+    /**
+     * @param gamePackages The packages, in internal form, that only the game jars contain.
+     */
+    public MixinTargetIndex(Set<String> gamePackages) {
+        this.gamePackages = gamePackages;
+    }
+
+    private static Object getField(Object owner, String name) throws ReflectiveOperationException {
+        for (var clazz = owner.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            for (var field : clazz.getDeclaredFields()) {
+                if (field.getName().equals(name)) {
+                    field.setAccessible(true);
+                    return field.get(owner);
+                }
+            }
+        }
+
+        throw new NoSuchFieldException(owner.getClass().getName() + "." + name);
+    }
+
+    /**
+     * Gets the index, or {@code null} if it has not been built or is out of date.
+     */
+    private Set<String> currentTargets() {
+        final var current = targets;
+
+        // a config registered after the index was built
+        if (current != null && Mixins.getUnvisitedCount() != 0) {
+            targets = null;
+            return null;
+        }
+
+        return current;
+    }
+
+    /**
+     * Gets the configs mixin has selected and prepared.
+     *
+     * @return The configs, or {@code null} if some are still waiting to be prepared.
+     * @throws ReflectiveOperationException If mixin's processor could not be reached.
+     */
+    @Nullable
+    static List<IMixinConfig> getPreparedConfigs() throws ReflectiveOperationException {
+        if (Mixins.getUnvisitedCount() != 0) {
+            return null;
+        }
+
+        final var transformer = MixinEnvironment.getCurrentEnvironment().getActiveTransformer();
+        final var processor = getField(transformer, "processor");
+        final var configs = new ArrayList<IMixinConfig>();
+
+        // the processor only mutates its configs while applying mixins, which holds its lock
+        synchronized (processor) {
+            if (!((List<?>) getField(processor, "pendingConfigs")).isEmpty()) {
+                return null;
+            }
+
+            for (final var config : (List<?>) getField(processor, "configs")) {
+                configs.add((IMixinConfig) config);
+            }
+        }
+
+        return configs;
+    }
+
+    private void rebuild() {
+        if (isBroken) {
+            return;
+        }
+
+        try {
+            final var configs = getPreparedConfigs();
+
+            if (configs == null) {
+                return;
+            }
+
+            final var index = new HashSet<String>();
+
+            for (final var config : configs) {
+                for (final var target : config.getTargets()) {
+                    index.add(target.replace('/', '.'));
+                }
+            }
+
+            Log.debug(
+                LogCategory.GAME_PROVIDER,
+                "Indexed %d mixin targets from %d configs",
+                index.size(), configs.size()
+            );
+
+            targets = index;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to index mixin targets, all classes will go through mixin", e);
+            isBroken = true;
+        }
+    }
+
+    private boolean isGameClass(String name) {
+        final var dot = name.lastIndexOf('.');
+        return gamePackages.contains(dot == -1 ? "" : name.substring(0, dot).replace('.', '/'));
+    }
+
+    @Override
+    public byte[] transform(String name, byte[] bytes, UnaryOperator<byte[]> next) {
+        final var current = currentTargets();
+
+        if (current != null) {
+            if (isGameClass(name) && !current.contains(name)) {
+                fastPath.incrementAndGet();
+                return bytes;
+            }
+
+            slowPath.incrementAndGet();
+            return next.apply(bytes);
+        }
+
+        slowPath.incrementAndGet();
+        final var result = next.apply(bytes);
+
+        synchronized (this) {
+            if (targets == null) {
+                rebuild();
+            }
+        }
+
+        return result;
+    }
+
+    public long getFastPathCount() {
+        return fastPath.get();
+    }
+
+    public long getSlowPathCount() {
+        return slowPath.get();
+    }
+}
@@ -0,0 +1,132 @@
+package com.floweytf.fabricpaperloader.transform;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import net.fabricmc.loader.impl.launch.FabricLauncher;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.transformer.IMixinTransformer;
+
+/**
+ * Wraps the mixin transformer used by Knot so that {@link TransformStage}s run around it. Knot does not expose the
+ * transformer, so it is swapped out reflectively: {@code Knot.classLoader} leads to the {@code KnotClassDelegate},
+ * whose {@code IMixinTransformer} is replaced. Fields are looked up by type rather than name to survive refactors in
+ * fabric loader.
+ */
+public class MixinTransformerHook implements InvocationHandler {
+    private final IMixinTransformer delegate;
+    private final List<TransformStage> stages;
+
+    private MixinTransformerHook(IMixinTransformer delegate, List<TransformStage> stages) {
+        this.delegate = delegate;
+        this.stages = stages;
+    }
+
+    @Nullable
+    private static Field findFieldOrNull(Class<?> owner, String typeName) {
+        for (var clazz = owner; clazz != null; clazz = clazz.getSuperclass()) {
+            for (var field : clazz.getDeclaredFields()) {
+                if (field.getType().getName().equals(typeName) || field.getType().getSimpleName().equals(typeName)) {
+                    field.setAccessible(true);
+                    return field;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static Field findField(Class<?> owner, String typeName) {
+        final var field = findFieldOrNull(owner, typeName);
+
+        if (field == null) {
+            throw new IllegalStateException("Could not find a field of type " + typeName + " in " + owner.getName());
+        }
+
+        return field;
+    }
+
+    /**
+     * Finds the {@code KnotClassDelegate}, which holds the mixin transformer. Knot keeps its class loader behind
+     * {@code KnotClassLoaderInterface}, which is either the delegate itself or a class loader that exposes it through
+     * {@code getDelegate()}.
+     */
+    private static Object findKnotDelegate(FabricLauncher launcher) throws ReflectiveOperationException {
+        final var classLoader = findField(launcher.getClass(), "KnotClassLoaderInterface").get(launcher);
+
+        if (classLoader == null) {
+            throw new IllegalStateException("Knot's class loader has not been created yet");
+        }
+
+        if (findFieldOrNull(classLoader.getClass(), IMixinTransformer.class.getName()) != null) {
+            return classLoader;
+        }
+
+        for (var clazz = classLoader.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                final var getDelegate = clazz.getDeclaredMethod("getDelegate");
+                getDelegate.setAccessible(true);
+                return getDelegate.invoke(classLoader);
+            } catch (NoSuchMethodException e) {
+                // declared further up, if at all
+            }
+        }
+
+        throw new IllegalStateException("Could not find the class delegate of " + classLoader.getClass().getName());
+    }
+
+    /**
+     * Installs the hook. Must be called after Knot has initialized its transformers, i.e. from
+     * {@code unlockClassPath}.
+     *
+     * @param launcher The Knot launcher.
+     * @param stages   The stages to run, outermost first.
+     */
+    public static void install(FabricLauncher launcher, List<TransformStage> stages) {
+        try {
+            final var knotDelegate = findKnotDelegate(launcher);
+            final var transformerField = findField(knotDelegate.getClass(), IMixinTransformer.class.getName());
+            final var transformer = (IMixinTransformer) transformerField.get(knotDelegate);
+
+            if (transformer == null) {
+                throw new IllegalStateException("Knot's mixin transformer has not been initialized yet");
+            }
+
+            transformerField.set(knotDelegate, Proxy.newProxyInstance(
+                IMixinTransformer.class.getClassLoader(),
+                new Class<?>[]{IMixinTransformer.class},
+                new MixinTransformerHook(transformer, List.copyOf(stages))
+            ));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to hook Knot's mixin transformer", e);
+        }
+    }
+
+    private byte[] transform(String name, String transformedName, byte[] bytes, int stage) {
+        if (stage == stages.size()) {
+            return delegate.transformClassBytes(name, transformedName, bytes);
+        }
+
+        final UnaryOperator<byte[]> next = input -> transform(name, transformedName, input, stage + 1);
+        return stages.get(stage).transform(transformedName, bytes, next);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        // a null input means mixin is being asked to generate a synthetic class, which no stage has any business with
+        if (method.getName().equals("transformClassBytes") && args.length == 3 && args[2] != null) {
+            return transform((String) args[0], (String) args[1], (byte[]) args[2], 0);
+        }
+
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.floweytf.fabricpaperloader.transform;
+
+import com.floweytf.fabricpaperloader.paperclip.VersionInfo;
+import com.floweytf.fabricpaperloader.util.Utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HexFormat;
+
+import net.fabricmc.loader.api.FabricLoader;
+import net.fabricmc.loader.api.ModContainer;
+import net.fabricmc.loader.api.metadata.ModOrigin;
+import net.fabricmc.loader.impl.FabricLoaderImpl;
+import net.fabricmc.loader.impl.util.UrlUtil;
+import org.spongepowered.asm.launch.MixinBootstrap;
+
+/**
+ * A fingerprint of everything that can influence how a game class is transformed: the paper build, the loader and
+ * mixin versions, and every mod (which carries the mixin configs and access wideners). Any change to these yields a
+ * different fingerprint.
+ */
+public final class ModSetFingerprint {
+    private ModSetFingerprint() {
+    }
+
+    private static void addFile(StringBuilder builder, Path path) {
+        builder.append(path.toAbsolutePath().normalize());
+
+        try {
+            builder.append(':').append(Files.size(path)).append(':').append(Files.getLastModifiedTime(path).toMillis());
+        } catch (IOException e) {
+            // a missing file still changes the fingerprint, which is all we care about
+            builder.append(":missing");
+        }
+
+        builder.append('\n');
+    }
+
+    /**
+     * Computes the fingerprint of the current launch. Must be called after fabric has resolved the mod set.
+     *
+     * @param version The paper version being launched.
+     * @return A hex string identifying the mod set.
+     */
+    public static String compute(VersionInfo version) {
+        final var builder = new StringBuilder()
+            .append(version.rawVersion()).append('\n')
+            .append(FabricLoaderImpl.VERSION).append('\n')
+            .append(MixinBootstrap.VERSION).append('\n');
+
+        addFile(builder, UrlUtil.LOADER_CODE_SOURCE);
+
+        FabricLoader.getInstance().getAllMods().stream()
+            .sorted(Comparator.comparing(mod -> mod.getMetadata().getId()))
+            .forEach(mod -> addMod(builder, mod));
+
+        final var digest = Utils.sha256().digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest, 0, 16);
+    }
+
+    private static void addMod(StringBuilder builder, ModContainer mod) {
+        final var metadata = mod.getMetadata();
+        builder.append(metadata.getId()).append('@').append(metadata.getVersion().getFriendlyString()).append('\n');
+
+        if (mod.getOrigin().getKind() == ModOrigin.Kind.PATH) {
+            mod.getOrigin().getPaths().forEach(path -> addFile(builder, path));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.floweytf.fabricpaperloader.transform;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Detects the point at which paper has finished starting up, which is when bukkit first fires {@code ServerLoadEvent}
+ * once all worlds are loaded. The event's constructors are patched to call {@link #serverLoaded()}; merely loading or
+ * linking the class, as a plugin registering a listener for it does, is not enough.
+ * <p>
+ * The patched constructors are in a game class, which reaches this class through Knot's parent class loader.
+ */
+public class StartupMonitor implements TransformStage {
+    private static final String MARKER = "org.bukkit.event.server.ServerLoadEvent";
+
+    @Nullable
+    private static volatile StartupMonitor installed;
+
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean isDone = new AtomicBoolean();
+
+    /**
+     * Registers a listener to run once startup is done. Listeners run in registration order on their own thread, so
+     * that the class load that tripped the marker is not held up.
+     *
+     * @param listener The listener.
+     */
+    public void onDone(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    public boolean isDone() {
+        return isDone.get();
+    }
+
+    private void fire() {
+        final var thread = new Thread(() -> {
+            for (final var listener : listeners) {
+                try {
+                    listener.run();
+                } catch (RuntimeException e) {
+                    Log.warn(LogCategory.GAME_PROVIDER, "Startup listener failed", e);
+                }
+            }
+
+            // the monitor stays installed, drop whatever state the listeners captured
+            listeners.clear();
+        }, "Paper Loader Startup");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Called from the patched constructors of {@code ServerLoadEvent}.
+     */
+    public static void serverLoaded() {
+        final var monitor = installed;
+
+        if (monitor != null && monitor.isDone.compareAndSet(false, true)) {
+            Log.debug(LogCategory.GAME_PROVIDER, "Startup done, running %d listeners", monitor.listeners.size());
+            monitor.fire();
+        }
+    }
+
+    private static byte[] patch(byte[] bytes) {
+        final var reader = new ClassReader(bytes);
+        final var writer = new ClassWriter(reader, 0);
+
+        reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+            @Override
+            public MethodVisitor visitMethod(int access, String methodName, String descriptor, String signature,
+                                             String[] exceptions) {
+                final var visitor = super.visitMethod(access, methodName, descriptor, signature, exceptions);
+
+                if (!methodName.equals("<init>")) {
+                    return visitor;
+                }
+
+                return new MethodVisitor(Opcodes.ASM9, visitor) {
+                    @Override
+                    public void visitCode() {
+                        super.visitCode();
+                        super.visitMethodInsn(
+                            Opcodes.INVOKESTATIC,
+                            Type.getInternalName(StartupMonitor.class),
+                            "serverLoaded",
+                            "()V",
+                            false
+                        );
+                    }
+                };
+            }
+        }, 0);
+
+        return writer.toByteArray();
+    }
+
+    @Override
+    public byte[] transform(String name, byte[] bytes, UnaryOperator<byte[]> next) {
+        final var result = next.apply(bytes);
+
+        if (!name.equals(MARKER) || result == null) {
+            return result;
+        }
+
+        installed = this;
+        return patch(result);
+    }
+}
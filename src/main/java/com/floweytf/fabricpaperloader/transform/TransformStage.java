@@ -0,0 +1,20 @@
+package com.floweytf.fabricpaperloader.transform;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * A stage wrapped around Knot's mixin transformer. Stages may inspect, replace or short-circuit the transformation of
+ * a class.
+ */
+@FunctionalInterface
+public interface TransformStage {
+    /**
+     * Transforms a class.
+     *
+     * @param name  The binary name of the class.
+     * @param bytes The class bytes, after fabric's pre-mixin transforms.
+     * @param next  The rest of the pipeline, ending with mixin itself.
+     * @return The transformed class bytes.
+     */
+    byte[] transform(String name, byte[] bytes, UnaryOperator<byte[]> next);
+}
@@ -0,0 +1,336 @@
+package com.floweytf.fabricpaperloader.transform;
+
+import com.floweytf.fabricpaperloader.util.Utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import net.fabricmc.loader.impl.util.log.Log;
+import net.fabricmc.loader.impl.util.log.LogCategory;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.spongepowered.asm.mixin.Mixins;
+import org.spongepowered.asm.mixin.transformer.ClassInfo;
+
+/**
+ * A content-addressed cache of mixin output. Entries are keyed by the hash of the class name and its pre-mixin bytes,
+ * and live in a directory named after the {@link ModSetFingerprint}, so a change to paper or any mod simply starts a
+ * fresh directory. The directory's index lists every entry, and whether mixin left it unchanged; only transformed
+ * classes get a file of their own.
+ * <p>
+ * Mixin config plugins may decide which mixins apply from state the fingerprint cannot see, such as a mod's config
+ * files, so classes that any config with a plugin targets are never cached.
+ */
+public class TransformedClassCache implements TransformStage {
+    private static final char UNCHANGED = 'U';
+    private static final char TRANSFORMED = 'T';
+    // bumped whenever what is safe to cache changes, so that older entries are dropped
+    private static final String FORMAT = "3";
+    private static final String INDEX_FILE = "index";
+    private static final int KEY_LENGTH = 64;
+
+    private static final String SYNTHETIC_PACKAGE = "org/spongepowered/asm/synthetic/";
+    private static final int CONSTANT_CLASS = 7;
+
+    private final Path directory;
+    private final Predicate<String> classExists;
+    private final Map<String, Character> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile Set<String> pluginTargets;
+    private boolean isBroken = false;
+
+    private TransformedClassCache(Path directory, Predicate<String> classExists, Map<String, Character> entries) {
+        this.directory = directory;
+        this.classExists = classExists;
+        this.entries = entries;
+    }
+
+    /**
+     * Opens the cache for the given fingerprint, deleting entries belonging to any other fingerprint.
+     *
+     * @param root        The root directory of the cache.
+     * @param fingerprint The fingerprint of the current mod set.
+     * @param classExists Whether a class, by internal name, can be found without mixin generating it.
+     * @return The cache.
+     * @throws IOException If the directory could not be prepared.
+     */
+    public static TransformedClassCache open(
+        Path root,
+        String fingerprint,
+        Predicate<String> classExists
+    ) throws IOException {
+        Files.createDirectories(root);
+
+        final var name = FORMAT + "-" + fingerprint;
+
+        try (Stream<Path> stale = Files.list(root)) {
+            stale.filter(dir -> !dir.getFileName().toString().equals(name)).forEach(TransformedClassCache::delete);
+        }
+
+        final var directory = root.resolve(name);
+        Files.createDirectories(directory);
+        final var entries = readIndex(directory.resolve(INDEX_FILE));
+        Log.info(LogCategory.GAME_PROVIDER, "Using transformed class cache %s, %d entries", directory, entries.size());
+        return new TransformedClassCache(directory, classExists, entries);
+    }
+
+    private static Map<String, Character> readIndex(Path file) throws IOException {
+        final var entries = new ConcurrentHashMap<String, Character>();
+
+        try {
+            for (final var line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                // a line cut short by a crash is skipped, its class is just transformed again
+                if (line.length() == KEY_LENGTH + 1 && (line.charAt(0) == UNCHANGED || line.charAt(0) == TRANSFORMED)) {
+                    entries.put(line.substring(1), line.charAt(0));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // a fresh directory
+        }
+
+        return entries;
+    }
+
+    private static void delete(Path root) {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to delete stale class cache " + root, e);
+        }
+    }
+
+    private static String keyFor(String name, byte[] bytes) {
+        final var digest = Utils.sha256();
+        digest.update(name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(bytes);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private Path fileFor(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    /**
+     * Gets the classes that configs with a plugin target, or {@code null} if mixin has not prepared its configs yet,
+     * or a config was added since they were collected.
+     */
+    @Nullable
+    private Set<String> getPluginTargets() {
+        final var current = pluginTargets;
+
+        if (current != null && Mixins.getUnvisitedCount() != 0) {
+            pluginTargets = null;
+            return null;
+        }
+
+        return current;
+    }
+
+    @Nullable
+    private synchronized Set<String> collectPluginTargets() {
+        if (pluginTargets != null || isBroken) {
+            return pluginTargets;
+        }
+
+        try {
+            final var configs = MixinTargetIndex.getPreparedConfigs();
+
+            if (configs == null) {
+                return null;
+            }
+
+            final var targets = new HashSet<String>();
+
+            for (final var config : configs) {
+                if (config.getPlugin() != null) {
+                    config.getTargets().forEach(target -> targets.add(target.replace('/', '.')));
+                }
+            }
+
+            Log.debug(
+                LogCategory.GAME_PROVIDER,
+                "Not caching %d classes targeted by configs with plugins",
+                targets.size()
+            );
+            pluginTargets = targets;
+            return targets;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to find mixin configs with plugins, not caching classes", e);
+            isBroken = true;
+            return null;
+        }
+    }
+
+    private static Set<String> readClassReferences(byte[] bytes) {
+        final var reader = new ClassReader(bytes);
+        final var buffer = new char[reader.getMaxStringLength()];
+        final var classes = new HashSet<String>();
+
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            final var offset = reader.getItem(i);
+
+            // the second slot of a long or double has no item
+            if (offset == 0 || bytes[offset - 1] != CONSTANT_CLASS) {
+                continue;
+            }
+
+            var name = reader.readUTF8(offset, buffer);
+
+            if (name.startsWith("[")) {
+                final var element = name.replaceFirst("^\\[+", "");
+
+                if (!element.startsWith("L")) {
+                    continue;
+                }
+
+                name = element.substring(1, element.length() - 1);
+            }
+
+            classes.add(name);
+        }
+
+        return classes;
+    }
+
+    /**
+     * Checks that every class mixin made the transformed class reference can be found on a later boot, when mixin is
+     * skipped. Mixin generates synthetic classes (e.g. for {@code Args}) and inner classes of the target while
+     * applying, and only registers them then, so a cached class referencing one would fail to link.
+     */
+    private boolean isCacheable(byte[] original, byte[] transformed) {
+        final var added = readClassReferences(transformed);
+        added.removeAll(readClassReferences(original));
+
+        for (final var name : added) {
+            if (name.startsWith(SYNTHETIC_PACKAGE) || !classExists.test(name)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public byte[] transform(String name, byte[] bytes, UnaryOperator<byte[]> next) {
+        final var key = keyFor(name, bytes);
+        var targets = getPluginTargets();
+
+        if (targets != null && !targets.contains(name)) {
+            final var kind = entries.get(key);
+
+            if (kind != null && kind == UNCHANGED) {
+                hits.incrementAndGet();
+                return bytes;
+            }
+
+            if (kind != null && kind == TRANSFORMED) {
+                try {
+                    final var transformed = Files.readAllBytes(fileFor(key));
+                    hits.incrementAndGet();
+                    // mixin normally registers the class's post-mixin shape while applying; do that ourselves so
+                    // mixins targeting subclasses still see merged members
+                    final var node = new ClassNode();
+                    new ClassReader(transformed).accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG);
+                    ClassInfo.fromClassNode(node);
+                    return transformed;
+                } catch (IOException e) {
+                    Log.warn(LogCategory.GAME_PROVIDER, "Failed to read cached class " + name, e);
+                }
+            }
+        }
+
+        misses.incrementAndGet();
+        final var result = next.apply(bytes);
+
+        if (result == null) {
+            return result;
+        }
+
+        // mixin prepares its configs while transforming the first class
+        if (targets == null) {
+            targets = collectPluginTargets();
+        }
+
+        if (targets == null || targets.contains(name)) {
+            return result;
+        }
+
+        final var unchanged = Arrays.equals(result, bytes);
+
+        if (!unchanged && !isCacheable(bytes, result)) {
+            return result;
+        }
+
+        try {
+            if (!unchanged) {
+                store(fileFor(key), result);
+            }
+
+            record(key, unchanged ? UNCHANGED : TRANSFORMED);
+        } catch (IOException e) {
+            Log.warn(LogCategory.GAME_PROVIDER, "Failed to cache transformed class " + name, e);
+        }
+
+        return result;
+    }
+
+    private static void store(Path entry, byte[] data) throws IOException {
+        Files.createDirectories(entry.getParent());
+        // classes may be loaded concurrently, so write to a unique file before moving into place
+        final var tmp = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+        Files.write(tmp, data);
+        Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Adds an entry to the index, after its file (if any) is in place.
+     */
+    private synchronized void record(String key, char kind) throws IOException {
+        if (entries.putIfAbsent(key, kind) != null) {
+            return;
+        }
+
+        Files.writeString(
+            directory.resolve(INDEX_FILE),
+            kind + key + "\n",
+            StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND
+        );
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -1,57 +1,27 @@
 package com.floweytf.fabricpaperloader.util;
 
-import java.util.Arrays;
-import java.util.HashMap;
+import com.floweytf.fabricpaperloader.redirect.RedirectEngine;
+import com.floweytf.fabricpaperloader.redirect.RedirectRule;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Predicate;
-import java.util.stream.Stream;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.MethodVisitor;
-import org.objectweb.asm.Opcodes;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Type;
 
 /**
- * Budget @Redirect
+ * Budget @Redirect: a class loader that applies a {@link RedirectEngine} to the classes it defines.
  */
 public class ReroutingCL extends ClassLoader {
-    private record Entry(String owner, String name, String desc, boolean isStatic) {
-    }
-
-    private class ReroutingClassVisitor extends ClassVisitor {
-        private ReroutingClassVisitor(ClassVisitor visitor) {
-            super(Opcodes.ASM9, visitor);
-        }
-
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
-                                         String[] exceptions) {
-            MethodVisitor mv = cv.visitMethod(access, name, descriptor, signature, exceptions);
-            return new ReroutingMethodVisitor(mv);
-        }
-    }
-
-    private class ReroutingMethodVisitor extends MethodVisitor {
-        private ReroutingMethodVisitor(MethodVisitor visitor) {
-            super(Opcodes.ASM9, visitor);
-        }
-
-        @Override
-        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
-            final var newSig = entries.get(new Entry(owner, name, descriptor, opcode == Opcodes.INVOKESTATIC));
-
-            if (newSig != null) {
-                super.visitMethodInsn(Opcodes.INVOKESTATIC, newSig.owner, newSig.name, newSig.desc, isInterface);
-            } else {
-                super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
-            }
-        }
+    static {
+        registerAsParallelCapable();
     }
 
     private final Predicate<String> shouldTransform;
-    private final Map<Entry, Entry> entries = new HashMap<>();
+    private final List<RedirectRule> rules = new ArrayList<>();
+    @Nullable
+    private RedirectEngine engine;
 
     public ReroutingCL(ClassLoader parent, Predicate<String> shouldTransform) {
         super(parent);
@@ -65,59 +35,75 @@ public class ReroutingCL extends ClassLoader {
         );
     }
 
-    public ReroutingCL rerouteS(Class<?> old, String oldName, Class<?> newOwner, String newName, Class<?> returnType,
-                                Class<?>... argumentTypes) {
-        final var desc = buildDesc(returnType, List.of(argumentTypes));
-
-        entries.put(
-            new Entry(Type.getInternalName(old), oldName, desc, true),
-            new Entry(Type.getInternalName(newOwner), newName, desc, true)
-        );
+    private ReroutingCL reroute(RedirectRule.Kind kind, Class<?> old, String oldName, Class<?> newOwner,
+                                String newName, Class<?> returnType, Class<?>... argumentTypes) {
+        rules.add(new RedirectRule(
+            kind,
+            Type.getInternalName(old),
+            oldName,
+            buildDesc(returnType, List.of(argumentTypes)),
+            Type.getInternalName(newOwner),
+            newName,
+            EnumSet.allOf(RedirectRule.Scope.class)
+        ));
 
         return this;
     }
 
+    public ReroutingCL rerouteS(Class<?> old, String oldName, Class<?> newOwner, String newName, Class<?> returnType,
+                                Class<?>... argumentTypes) {
+        return reroute(RedirectRule.Kind.STATIC, old, oldName, newOwner, newName, returnType, argumentTypes);
+    }
+
+    /**
+     * Reroutes an instance method to a static method taking the receiver as its first argument.
+     */
     public ReroutingCL rerouteI(Class<?> oldClass, String oldName, Class<?> newClass, String newName,
                                 Class<?> returnType, Class<?>... argumentTypes) {
-        final var oldDesc = buildDesc(returnType, List.of(argumentTypes));
-        final var newDesc = buildDesc(
-            returnType,
-            Stream.concat(Stream.of(oldClass), Arrays.stream(argumentTypes)).toList()
-        );
-
-        entries.put(
-            new Entry(Type.getInternalName(oldClass), oldName, oldDesc, false),
-            new Entry(Type.getInternalName(newClass), newName, newDesc, true)
-        );
-        return this;
+        return reroute(RedirectRule.Kind.INSTANCE, oldClass, oldName, newClass, newName, returnType, argumentTypes);
     }
 
-    @Override
-    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
-        if (!shouldTransform.test(name)) {
-            return super.loadClass(name, resolve);
+    private synchronized RedirectEngine getEngine() {
+        if (engine == null) {
+            engine = new RedirectEngine(rules);
         }
 
-        try (var input = super.getResourceAsStream(name.replaceAll("\\.", "/") + ".class")) {
+        return engine;
+    }
+
+    private Class<?> defineRerouted(String name) throws ClassNotFoundException {
+        try (var input = super.getResourceAsStream(name.replace('.', '/') + ".class")) {
             if (input == null) {
                 throw new ClassNotFoundException("Failed to read class bytes from parent for " + name);
             }
 
-            ClassReader reader = new ClassReader(input.readAllBytes());
-            ClassWriter writer = new ClassWriter(reader, 0);
-            reader.accept(new ReroutingClassVisitor(writer), 0);
+            final var bytes = getEngine().apply(input.readAllBytes());
+            return defineClass(name, bytes, 0, bytes.length);
+        } catch (ClassNotFoundException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ClassNotFoundException("Failed to load class: " + name, e);
+        }
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (!shouldTransform.test(name)) {
+            return super.loadClass(name, resolve);
+        }
 
-            final var bytes = writer.toByteArray();
+        synchronized (getClassLoadingLock(name)) {
+            var clazz = findLoadedClass(name);
 
-            final var clazz = defineClass(name, bytes, 0, bytes.length);
+            if (clazz == null) {
+                clazz = defineRerouted(name);
+            }
 
             if (resolve) {
                 resolveClass(clazz);
             }
 
             return clazz;
-        } catch (Throwable e) {
-            throw new ClassNotFoundException("Failed to load class: " + name, e);
         }
     }
 }
@@ -1,12 +1,23 @@
 package com.floweytf.fabricpaperloader.util;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.HexFormat;
 
 public class Utils {
+    private static final long MAP_CHUNK_SIZE = 64L * 1024 * 1024;
+
     public static URLClassLoader classLoaderFor(Path... paths) {
         return classLoaderFor(Utils.class.getClassLoader(), paths);
     }
@@ -23,4 +34,61 @@ public class Utils {
             parent
         );
     }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * Computes the SHA-256 hash of a file, in the lowercase hex form used by paperclip's lists. The file is
+     * memory-mapped rather than copied through a buffer.
+     */
+    public static String sha256(Path path) throws IOException {
+        final var digest = sha256();
+
+        try (final var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final var size = channel.size();
+
+            for (long position = 0; position < size; position += MAP_CHUNK_SIZE) {
+                final var length = Math.min(MAP_CHUNK_SIZE, size - position);
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Computes the SHA-256 hash of some data, in the lowercase hex form used by paperclip's lists.
+     */
+    public static String sha256(byte[] data) {
+        return HexFormat.of().formatHex(sha256().digest(data));
+    }
+
+    /**
+     * Writes a file through a channel, replacing any existing file atomically. No mapping is used, since a live mapping
+     * would keep the temporary file in use (which blocks the move on Windows) until it is garbage collected.
+     */
+    public static void writeAtomically(Path path, byte[] data) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        final var tmp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+
+        try {
+            try (final var channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                final var buffer = ByteBuffer.wrap(data);
+
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
 }